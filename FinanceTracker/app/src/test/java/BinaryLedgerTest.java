@@ -0,0 +1,100 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BinaryLedgerTest
+{
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackWhatWasWritten() throws IOException
+    {
+        RecordStore records = new RecordStore();
+        // More records than fit in one block, with negative days and amounts and non-ASCII categories
+        for (int i = 0; i < 10_000; i++)
+        {
+            OperationType type = i % 3 == 0 ? OperationType.INCOME : OperationType.EXPENSE;
+            records.add(i + 1, type, type == OperationType.INCOME ? "Зарплата" : "Food " + i % 17,
+                    i * 37L - 5000, i * 11 - 40_000);
+        }
+        Path path = directory.resolve("records.ledger");
+        new BinaryFileHandler().writeLedger(records, path);
+
+        RecordStore read = new RecordStore();
+        int count = new BinaryFileHandler().readLedger(path, read.getDictionary(), read::add);
+        assertEquals(records.size(), count);
+        assertEquals(rows(records), rows(read));
+    }
+    @Test
+    void leavesOutRemovedRecords() throws IOException
+    {
+        FinanceTracker tracker = new FinanceTracker();
+        for (int day = 1; day <= 20; day++)
+        {
+            tracker.addRecord(OperationType.EXPENSE, "Food", day, LocalDate.of(2024, 3, day));
+        }
+        tracker.removeRecord(3);
+        tracker.removeRecord(10);
+        Path path = directory.resolve("tracker.ledger");
+        tracker.writeLedger(path);
+
+        FinanceTracker read = new FinanceTracker();
+        read.readLedger(path);
+        assertEquals(18, read.getRecordsCount());
+        assertEquals(TestRecords.describe(tracker.getAllRecords()), TestRecords.describe(read.getAllRecords()));
+    }
+    @Test
+    void reportsACorruptCategoryDictionaryAsAnIOException() throws IOException
+    {
+        RecordStore records = new RecordStore();
+        records.add(1, OperationType.EXPENSE, "Food", 100, 19000);
+        records.add(2, OperationType.INCOME, "Salary", 5000, 19001);
+        Path path = directory.resolve("records.ledger");
+        new BinaryFileHandler().writeLedger(records, path);
+        byte[] bytes = Files.readAllBytes(path);
+
+        // The length of the first name follows the 24-byte header
+        for (int length : new int[] {-5, 1 << 30, bytes.length})
+        {
+            byte[] corrupt = bytes.clone();
+            ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putInt(24, length);
+            assertUnreadable(corrupt);
+        }
+        assertUnreadable(Arrays.copyOf(bytes, 26));
+    }
+
+    private void assertUnreadable(byte[] bytes) throws IOException
+    {
+        Path path = directory.resolve("corrupt.ledger");
+        Files.write(path, bytes);
+        IOException error = assertThrows(IOException.class,
+                () -> new BinaryFileHandler().readLedger(path, new CategoryDictionary(), new RecordStore()::add));
+        assertEquals("The category dictionary is corrupted", error.getMessage());
+    }
+    private static List<String> rows(RecordStore records)
+    {
+        List<String> rows = new ArrayList<>();
+        for (int slot = 0; slot < records.slotCount(); slot++)
+        {
+            if (!records.isDeleted(slot))
+            {
+                rows.add(records.getId(slot) + " " + records.getType(slot) + " "
+                        + records.getDictionary().nameOf(records.getCategoryId(slot)) + " "
+                        + records.getCents(slot) + " " + records.getEpochDay(slot));
+            }
+        }
+        return rows;
+    }
+}
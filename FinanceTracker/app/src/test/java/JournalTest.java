@@ -0,0 +1,88 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalTest
+{
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysTheLoggedEntriesAfterReopening() throws IOException
+    {
+        Path snapshot = directory.resolve("ledger.ledger");
+        Path path = directory.resolve("ledger.ledger.journal");
+        try (Journal journal = new Journal(path, snapshot))
+        {
+            journal.logAddCategory("Кафе", OperationType.EXPENSE);
+            journal.logAdd(1, OperationType.EXPENSE, "Кафе", 1250, 19000);
+            journal.logUpdate(1, OperationType.EXPENSE, "Кафе", 990, 19001);
+            journal.logRemove(1);
+            journal.logClear();
+        }
+        try (Journal journal = new Journal(path, snapshot))
+        {
+            assertEquals(List.of("4 0 EXPENSE Кафе 0 0", "1 1 EXPENSE Кафе 1250 19000",
+                    "2 1 EXPENSE Кафе 990 19001", "3 1 null null 0 0", "5 0 null null 0 0"), replay(journal));
+        }
+    }
+    @Test
+    void cutsOffATornTail() throws IOException
+    {
+        Path snapshot = directory.resolve("ledger.ledger");
+        Path path = directory.resolve("ledger.ledger.journal");
+        try (Journal journal = new Journal(path, snapshot))
+        {
+            journal.logAdd(1, OperationType.INCOME, "Salary", 100_000, 19000);
+            journal.logAdd(2, OperationType.EXPENSE, "Food", 500, 19001);
+        }
+        // A crash in the middle of the next entry leaves part of it behind
+        Files.write(path, new byte[] {20, 0, 0, 0, 1, 7, 7}, StandardOpenOption.APPEND);
+        try (Journal journal = new Journal(path, snapshot))
+        {
+            journal.logAdd(3, OperationType.EXPENSE, "Food", 700, 19002);
+        }
+        try (Journal journal = new Journal(path, snapshot))
+        {
+            assertEquals(List.of("1 1 INCOME Salary 100000 19000", "1 2 EXPENSE Food 500 19001",
+                    "1 3 EXPENSE Food 700 19002"), replay(journal));
+        }
+    }
+    @Test
+    void trackerRecoversItsRecordsFromSnapshotAndJournal()
+    {
+        String ledger = directory.resolve("ledger.ledger").toString();
+        FinanceTracker tracker = new FinanceTracker();
+        tracker.openJournal(ledger);
+        tracker.addRecord(OperationType.INCOME, "Salary", 1000, LocalDate.of(2024, 1, 5));
+        tracker.addRecord(OperationType.EXPENSE, "Food", 12.34, LocalDate.of(2024, 1, 6));
+        tracker.checkpoint();
+        tracker.addRecord(OperationType.EXPENSE, "Кафе", 7.5, LocalDate.of(2024, 2, 1));
+        tracker.updateRecord(2, OperationType.EXPENSE, "Food", 20, LocalDate.of(2024, 1, 7));
+        tracker.removeRecord(1);
+        tracker.closeJournal();
+
+        FinanceTracker recovered = new FinanceTracker();
+        recovered.openJournal(ledger);
+        assertEquals(TestRecords.describe(tracker.getAllRecords()), TestRecords.describe(recovered.getAllRecords()));
+        assertEquals(tracker.getCategories(), recovered.getCategories());
+        assertEquals(tracker.getTotalBalanceCents(), recovered.getTotalBalanceCents());
+        recovered.closeJournal();
+    }
+
+    private static List<String> replay(Journal journal) throws IOException
+    {
+        List<String> entries = new ArrayList<>();
+        journal.replay((operation, id, type, category, cents, epochDay) ->
+                entries.add(operation + " " + id + " " + type + " " + category + " " + cents + " " + epochDay));
+        return entries;
+    }
+}
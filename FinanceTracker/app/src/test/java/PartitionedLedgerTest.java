@@ -0,0 +1,99 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PartitionedLedgerTest
+{
+    private static final LocalDate FIRST = LocalDate.of(2023, 11, 1);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void answersLikeTheTrackerItWasCreatedFrom() throws IOException
+    {
+        FinanceTracker tracker = sampleTracker();
+        tracker.saveToPartitions(directory.toString());
+
+        try (PartitionedLedger ledger = PartitionedLedger.open(directory, 2))
+        {
+            assertEquals(tracker.getRecordsCount(), ledger.getRecordsCount());
+            assertEquals(6, ledger.getPartitionCount());
+            assertEquals(0, ledger.getLoadedPartitionCount());
+            assertEquals(tracker.getTotalsByCategory(), ledger.getTotalsByCategory());
+            assertEquals(tracker.getTotalBalanceCents(), ledger.getTotalBalanceCents());
+
+            // Partly covered months are read from their files, whole months come from the summaries
+            LocalDate start = LocalDate.of(2023, 12, 10);
+            LocalDate end = LocalDate.of(2024, 3, 20);
+            assertEquals(tracker.getStatisticsByCategory(start, end), ledger.getStatisticsByCategory(start, end));
+            assertEquals(tracker.getStatisticsByType(start, end), ledger.getStatisticsByType(start, end));
+            assertEquals(tracker.getBalance(start, end), ledger.getBalance(start, end), 1e-9);
+            assertEquals(TestRecords.describe(tracker.getRecordsByDateRange(start, end)),
+                    TestRecords.describe(ledger.getRecordsByDateRange(start, end)));
+            assertEquals(2, ledger.getLoadedPartitionCount());
+        }
+    }
+    @Test
+    void keepsAddedRecordsAcrossReopening() throws IOException
+    {
+        sampleTracker().saveToPartitions(directory.toString());
+        int count;
+        try (PartitionedLedger ledger = PartitionedLedger.open(directory, 1))
+        {
+            ledger.addRecord(OperationType.EXPENSE, "Food", 3.5, LocalDate.of(2024, 1, 15));
+            ledger.addRecord(OperationType.INCOME, "Salary", 900, LocalDate.of(2024, 7, 1));
+            ledger.addRecord(OperationType.EXPENSE, "Кафе", 12, LocalDate.of(2023, 12, 31));
+            count = ledger.getRecordsCount();
+        }
+        try (PartitionedLedger ledger = PartitionedLedger.open(directory, 1))
+        {
+            assertEquals(count, ledger.getRecordsCount());
+            assertEquals(7, ledger.getPartitionCount());
+            assertEquals(1, ledger.getRecordsByDateRange(LocalDate.of(2024, 7, 1), LocalDate.of(2024, 7, 31)).size());
+            assertEquals(12.0, ledger.getStatisticsByCategory(FIRST, LocalDate.of(2024, 12, 31)).get("Кафе"));
+        }
+    }
+    @Test
+    void manifestWrittenOnEvictionOnlyListsMonthsOnDisk() throws IOException
+    {
+        // Never closed: the months that reached the disk are those written when January was evicted
+        PartitionedLedger unclosed = PartitionedLedger.open(directory, 2);
+        unclosed.addRecord(OperationType.EXPENSE, "Food", 1, LocalDate.of(2024, 1, 10));
+        unclosed.addRecord(OperationType.EXPENSE, "Food", 2, LocalDate.of(2024, 2, 10));
+        unclosed.addRecord(OperationType.EXPENSE, "Food", 4, LocalDate.of(2024, 3, 10));
+
+        try (PartitionedLedger ledger = PartitionedLedger.open(directory, 2))
+        {
+            LocalDate start = LocalDate.of(2024, 1, 1);
+            LocalDate end = LocalDate.of(2024, 12, 31);
+            assertEquals(ledger.getRecordsCount(), ledger.getRecordsByDateRange(start, end).size());
+            assertEquals(1, ledger.getRecordsByDateRange(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29)).size());
+            assertEquals(3.0, ledger.getTotalsByCategory().get("Food"));
+            assertEquals(3.0, ledger.getStatisticsByCategory(start, LocalDate.of(2024, 2, 15)).get("Food"));
+        }
+    }
+
+    // Records from November 2023 to April 2024, several per day
+    private static FinanceTracker sampleTracker()
+    {
+        FinanceTracker tracker = new FinanceTracker();
+        for (LocalDate date = FIRST; date.isBefore(LocalDate.of(2024, 5, 1)); date = date.plusDays(1))
+        {
+            tracker.addRecord(OperationType.EXPENSE, "Food", 10 + date.getDayOfMonth(), date);
+            if (date.getDayOfMonth() % 7 == 0)
+            {
+                tracker.addRecord(OperationType.EXPENSE, "Transport", 2.5, date);
+            }
+            if (date.getDayOfMonth() == 1)
+            {
+                tracker.addRecord(OperationType.INCOME, "Salary", 3000, date);
+            }
+        }
+        return tracker;
+    }
+}
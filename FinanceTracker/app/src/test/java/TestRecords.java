@@ -0,0 +1,24 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Records as comparable text, ordered by id and date
+final class TestRecords
+{
+    private TestRecords()
+    {
+    }
+
+    static List<String> describe(List<FinancialRecord> records)
+    {
+        List<FinancialRecord> sorted = new ArrayList<>(records);
+        sorted.sort(Comparator.comparingInt(FinancialRecord::getId).thenComparing(FinancialRecord::getDate));
+        List<String> result = new ArrayList<>();
+        for (FinancialRecord record : sorted)
+        {
+            result.add(record.getId() + " " + record.getType() + " " + record.getCategory() + " "
+                    + record.getCents() + " " + record.getDate());
+        }
+        return result;
+    }
+}
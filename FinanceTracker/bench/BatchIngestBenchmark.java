@@ -0,0 +1,40 @@
+// Compares adding records one by one with building a RecordBatch and adding it with addRecords.
+// Usage: java BatchIngestBenchmark [records] [batch size]
+public class BatchIngestBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        SyntheticLedger ledger = new SyntheticLedger(size, 42);
+
+        BenchmarkRunner runner = new BenchmarkRunner(2, 5);
+        runner.run("addRecord one by one", size, () -> ledger.newTracker().getRecordsCount());
+        runner.run("addRecords, one batch", size, () ->
+        {
+            FinanceTracker tracker = new FinanceTracker();
+            RecordBatch batch = new RecordBatch();
+            for (int i = 0; i < size; i++)
+            {
+                ledger.addTo(batch, i);
+            }
+            tracker.addRecords(batch);
+            return tracker.getRecordsCount();
+        });
+        runner.run("addRecords, batches of " + batchSize, size, () ->
+        {
+            FinanceTracker tracker = new FinanceTracker();
+            for (int start = 0; start < size; start += batchSize)
+            {
+                RecordBatch batch = new RecordBatch();
+                for (int i = start; i < Math.min(size, start + batchSize); i++)
+                {
+                    ledger.addTo(batch, i);
+                }
+                tracker.addRecords(batch);
+            }
+            return tracker.getRecordsCount();
+        });
+        System.out.println("(checksum " + runner.getSink() + ")");
+    }
+}
@@ -0,0 +1,75 @@
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+// Small benchmark harness: warm-up iterations, then measured iterations reporting
+// throughput, bytes allocated per operation and allocation rate of the calling thread,
+// and the garbage collections that ran, much like the JMH GC profiler
+public class BenchmarkRunner
+{
+    public interface Task
+    {
+        // Runs one iteration and returns a value that is consumed so the work cannot be eliminated
+        long run() throws Exception;
+    }
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    // Captured up front so that benchmarks may silence System.out while they run
+    private final PrintStream out = System.out;
+    private long sink;
+
+    public BenchmarkRunner(int warmupIterations, int measurementIterations)
+    {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+    }
+
+    // Runs the task and prints operations per second and allocated bytes per operation
+    public void run(String name, long operationsPerIteration, Task task) throws Exception
+    {
+        for (int i = 0; i < warmupIterations; i++)
+        {
+            sink += task.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        double best = 0;
+        double total = 0;
+        long allocated = 0;
+        long elapsedTotal = 0;
+        long collectionsBefore = collections();
+        for (int i = 0; i < measurementIterations; i++)
+        {
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            sink += task.run();
+            long elapsed = System.nanoTime() - start;
+            allocated += threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            elapsedTotal += elapsed;
+
+            double throughput = operationsPerIteration * 1e9 / elapsed;
+            best = Math.max(best, throughput);
+            total += throughput;
+        }
+        out.printf("%-45s %,15.0f ops/s (best %,.0f) %,10.1f B/op %,8.1f MB/s %4d GCs%n",
+                name, total / measurementIterations, best,
+                (double) allocated / measurementIterations / operationsPerIteration,
+                allocated * 1e9 / elapsedTotal / (1 << 20), collections() - collectionsBefore);
+    }
+    // Keeps the consumed results observable
+    public long getSink()
+    {
+        return sink;
+    }
+    private static long collections()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+}
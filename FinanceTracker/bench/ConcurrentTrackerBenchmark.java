@@ -0,0 +1,153 @@
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Multi-threaded stress test and throughput benchmark of ConcurrentFinanceTracker.
+// Writers add records while a reader keeps asking for the balance and the statistics; every iteration
+// then checks that no record was lost or duplicated and that each snapshot was consistent.
+// Usage: java ConcurrentTrackerBenchmark [writers] [records per writer]
+public class ConcurrentTrackerBenchmark
+{
+    private static final String[] INCOME = {"Salary", "Freelance", "Gift"};
+    private static final String[] EXPENSE = {"Food", "Transport", "Housing", "Health"};
+    private static final LocalDate START = LocalDate.of(2020, 1, 1);
+    private static final LocalDate END = START.plusDays(999);
+
+    public static void main(String[] args) throws Exception
+    {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int perWriter = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        long total = (long) writers * perWriter;
+
+        BenchmarkRunner runner = new BenchmarkRunner(2, 5);
+        runner.run("synchronized FinanceTracker, " + writers + " writers", total, () ->
+        {
+            FinanceTracker tracker = new FinanceTracker();
+            runWriters(writers, perWriter, (type, category, amount, date) ->
+            {
+                synchronized (tracker)
+                {
+                    tracker.addRecord(type, category, amount, date);
+                }
+            });
+            return tracker.getRecordsCount();
+        });
+        runner.run("ConcurrentFinanceTracker, " + writers + " writers", total, () ->
+        {
+            ConcurrentFinanceTracker tracker = new ConcurrentFinanceTracker();
+            runWriters(writers, perWriter, tracker::addRecord);
+            return tracker.getRecordsCount();
+        });
+        runner.run("ConcurrentFinanceTracker, " + writers + " writers + reader", total, () ->
+                stress(writers, perWriter));
+        System.out.println("(checksum " + runner.getSink() + ")");
+    }
+
+    private interface Writer
+    {
+        void add(OperationType type, String category, double amount, LocalDate date);
+    }
+
+    // Each writer adds the same deterministic sequence: one income of 1.00 followed by expenses of 0.25
+    private static void runWriters(int writers, int perWriter, Writer writer) throws InterruptedException
+    {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[writers];
+        for (int w = 0; w < writers; w++)
+        {
+            threads[w] = new Thread(() ->
+            {
+                try
+                {
+                    start.await();
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                for (int i = 0; i < perWriter; i++)
+                {
+                    LocalDate date = START.plusDays(i % 1000);
+                    if (i % 4 == 0)
+                    {
+                        writer.add(OperationType.INCOME, INCOME[i % INCOME.length], 1.00, date);
+                    }
+                    else
+                    {
+                        writer.add(OperationType.EXPENSE, EXPENSE[i % EXPENSE.length], 0.25, date);
+                    }
+                }
+            });
+            threads[w].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+    }
+    private static long stress(int writers, int perWriter) throws InterruptedException
+    {
+        ConcurrentFinanceTracker tracker = new ConcurrentFinanceTracker();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong reads = new AtomicLong();
+        String[] failure = new String[1];
+        Thread reader = new Thread(() ->
+        {
+            while (!done.get() && failure[0] == null)
+            {
+                // Within one snapshot the totals, the statistics and the count must agree
+                String problem = tracker.read(snapshot ->
+                {
+                    double income = snapshot.getTotalIncome();
+                    double expenses = snapshot.getTotalExpenses();
+                    double statistics = snapshot.getStatisticsByType(START, END).values().stream()
+                            .mapToDouble(Double::doubleValue).sum();
+                    long count = snapshot.getRecordsCount();
+                    return Math.abs(income + expenses - statistics) > 1e-6 || count < 0
+                            ? "statistics " + statistics + " disagree with totals " + income + " + " + expenses
+                            : null;
+                });
+                if (problem != null)
+                {
+                    failure[0] = problem;
+                }
+                reads.incrementAndGet();
+            }
+        });
+        reader.start();
+        runWriters(writers, perWriter, tracker::addRecord);
+        done.set(true);
+        reader.join();
+        if (failure[0] != null)
+        {
+            throw new IllegalStateException(failure[0]);
+        }
+
+        List<FinancialRecord> records = tracker.getAllRecords();
+        long total = (long) writers * perWriter;
+        if (records.size() != total)
+        {
+            throw new IllegalStateException("Expected " + total + " records, found " + records.size());
+        }
+        BitSet ids = new BitSet();
+        for (FinancialRecord record : records)
+        {
+            if (record.getId() < 1 || record.getId() > total || ids.get(record.getId()))
+            {
+                throw new IllegalStateException("Unexpected or duplicate id " + record.getId());
+            }
+            ids.set(record.getId());
+        }
+        long incomes = (long) writers * ((perWriter + 3) / 4);
+        double expectedBalance = incomes * 1.00 - (total - incomes) * 0.25;
+        if (Math.abs(tracker.getTotalBalance() - expectedBalance) > 1e-6)
+        {
+            throw new IllegalStateException("Expected balance " + expectedBalance + ", found " + tracker.getTotalBalance());
+        }
+        return records.size() + reads.get();
+    }
+}
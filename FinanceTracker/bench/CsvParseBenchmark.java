@@ -0,0 +1,102 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Compares CSV loading throughput of CsvRecordParser with the split-based parsing FileHandler used before.
+// Usage: java [-Djava.util.concurrent.ForkJoinPool.common.parallelism=N] CsvParseBenchmark [rows]
+public class CsvParseBenchmark
+{
+    private static final String[] CATEGORIES = {"Salary", "Freelance", "Food", "Transport", "Housing", "Health"};
+
+    public static void main(String[] args) throws Exception
+    {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        File file = File.createTempFile("finance-bench", ".csv");
+        file.deleteOnExit();
+        writeSyntheticFile(file, rows);
+
+        BenchmarkRunner runner = new BenchmarkRunner(3, 5);
+        runner.run("split-based parser (previous FileHandler)", rows, () -> parseWithSplit(file).size());
+        runner.run("CsvRecordParser -> checksum sink", rows, () ->
+        {
+            long[] checksum = new long[1];
+            try (FileInputStream input = new FileInputStream(file))
+            {
+                new CsvRecordParser(new CategoryDictionary()).parse(input,
+                        (id, type, categoryId, cents, epochDay) -> checksum[0] += cents + epochDay + categoryId);
+            }
+            return checksum[0];
+        });
+        runner.run("CsvRecordParser -> RecordStore", rows, () ->
+        {
+            RecordStore store = new RecordStore();
+            try (FileInputStream input = new FileInputStream(file))
+            {
+                new CsvRecordParser(store.getDictionary()).parse(input, store::add);
+            }
+            return store.size();
+        });
+        // Allocation is only counted on the calling thread, so B/op excludes the parsing workers here
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        runner.run("mapped parallel load -> RecordStore", rows, () ->
+        {
+            RecordStore store = new RecordStore();
+            new FileHandler().loadFromFileParallel(file.getPath(), store.getDictionary(), store::add);
+            return store.size();
+        });
+        System.setOut(console);
+        System.out.println("(checksum " + runner.getSink() + ")");
+    }
+
+    private static void writeSyntheticFile(File file, int rows) throws IOException
+    {
+        Random random = new Random(42);
+        LocalDate start = LocalDate.of(2015, 1, 1);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file)))
+        {
+            writer.write("id,type,category,amount,date");
+            writer.newLine();
+            for (int id = 1; id <= rows; id++)
+            {
+                int category = random.nextInt(CATEGORIES.length);
+                writer.write(id + "," + (category < 2 ? "INCOME" : "EXPENSE") + "," + CATEGORIES[category] + ","
+                        + random.nextInt(100_000) / 100 + "." + random.nextInt(10) + random.nextInt(10) + ","
+                        + start.plusDays(random.nextInt(3650)));
+                writer.newLine();
+            }
+        }
+    }
+    // The line-by-line parsing FileHandler performed before CsvRecordParser, kept as the baseline
+    private static List<FinancialRecord> parseWithSplit(File file) throws IOException
+    {
+        List<FinancialRecord> records = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file)))
+        {
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null)
+            {
+                if (line.trim().isEmpty())
+                {
+                    continue;
+                }
+                String[] parts = line.split(",");
+                records.add(new FinancialRecord(Integer.parseInt(parts[0].trim()),
+                        OperationType.valueOf(parts[1].trim()), parts[2].trim(),
+                        Double.parseDouble(parts[3].trim().replace(",", ".")),
+                        LocalDate.parse(parts[4].trim())));
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// Scaling curve of the parallel aggregation mode: the same aggregations on pools of 1, 2, 4, ... cores.
+// One core is the sequential baseline, since the mode never splits work for a single-threaded pool.
+// Usage: java -Xmx8g ParallelAggregationBenchmark [size] [max cores]   (default: 10000000, all cores)
+public class ParallelAggregationBenchmark
+{
+    private static final long SEED = 42;
+
+    public static void main(String[] args) throws Exception
+    {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int maxCores = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        List<Integer> coreCounts = new ArrayList<>();
+        for (int cores = 1; cores < maxCores; cores *= 2)
+        {
+            coreCounts.add(cores);
+        }
+        coreCounts.add(maxCores);
+
+        System.out.printf("--- %,d records ---%n", size);
+        FinanceTracker tracker = new SyntheticLedger(size, SEED).newTracker();
+        BenchmarkRunner runner = new BenchmarkRunner(2, 5);
+        RecordQuery byType = new RecordQuery().groupBy(RecordQuery.GroupBy.TYPE);
+        RecordQuery byCategoryAndMonth = new RecordQuery()
+                .groupBy(RecordQuery.GroupBy.CATEGORY, RecordQuery.GroupBy.MONTH);
+        for (int cores : coreCounts)
+        {
+            ForkJoinPool pool = new ForkJoinPool(cores);
+            try
+            {
+                tracker.setParallelAggregation(pool, 0);
+                runner.run("query sums by type, " + cores + " cores", size, () ->
+                        tracker.query(byType).getRows().size());
+                runner.run("query by category and month, " + cores + " cores", size, () ->
+                        tracker.query(byCategoryAndMonth).getRows().size());
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+        System.out.println("(checksum " + runner.getSink() + ")");
+    }
+}
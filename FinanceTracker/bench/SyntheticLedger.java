@@ -0,0 +1,88 @@
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+// Deterministic synthetic records: the same size and seed always give the same ledger.
+// The records are kept in columns so that ten million of them fit in a modest heap.
+public class SyntheticLedger
+{
+    public static final LocalDate START = LocalDate.of(2015, 1, 1);
+    public static final int DAYS = 3650;
+
+    private static final String[] INCOME = {"Salary", "Prize", "Investment", "Gift", "Refund", "Freelance"};
+    private static final String[] EXPENSE = {"Food", "Transport", "Housing", "Entertainments", "Clothes",
+            "Health", "Education", "Communal services"};
+    private static final LocalDate[] DATES = new LocalDate[DAYS];
+
+    static
+    {
+        for (int day = 0; day < DAYS; day++)
+        {
+            DATES[day] = START.plusDays(day);
+        }
+    }
+
+    private final boolean[] income;
+    private final byte[] categories;
+    private final double[] amounts;
+    private final short[] days;
+
+    public SyntheticLedger(int size, long seed)
+    {
+        income = new boolean[size];
+        categories = new byte[size];
+        amounts = new double[size];
+        days = new short[size];
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < size; i++)
+        {
+            // Roughly one income per four expenses, amounts with two decimals, dates mostly ascending
+            income[i] = random.nextInt(5) == 0;
+            categories[i] = (byte) random.nextInt(income[i] ? INCOME.length : EXPENSE.length);
+            amounts[i] = random.nextInt(income[i] ? 500_000 : 20_000) / 100.0;
+            int day = (int) ((long) i * DAYS / size) + random.nextInt(30) - 15;
+            days[i] = (short) Math.max(0, Math.min(DAYS - 1, day));
+        }
+    }
+
+    public int size()
+    {
+        return amounts.length;
+    }
+    // Adds record i through the public addRecord API, the way ConsoleUI does
+    public void addTo(FinanceTracker tracker, int i)
+    {
+        if (income[i])
+        {
+            tracker.addRecord(OperationType.INCOME, INCOME[categories[i]], amounts[i], DATES[days[i]]);
+        }
+        else
+        {
+            tracker.addRecord(OperationType.EXPENSE, EXPENSE[categories[i]], amounts[i], DATES[days[i]]);
+        }
+    }
+    // Appends record i to a batch the way a programmatic feed would
+    public void addTo(RecordBatch batch, int i)
+    {
+        if (income[i])
+        {
+            batch.add(OperationType.INCOME, INCOME[categories[i]], amounts[i], DATES[days[i]]);
+        }
+        else
+        {
+            batch.add(OperationType.EXPENSE, EXPENSE[categories[i]], amounts[i], DATES[days[i]]);
+        }
+    }
+    public FinanceTracker newTracker()
+    {
+        FinanceTracker tracker = new FinanceTracker();
+        for (int i = 0; i < size(); i++)
+        {
+            addTo(tracker, i);
+        }
+        return tracker;
+    }
+    public static LocalDate date(int day)
+    {
+        return DATES[day];
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+// Hot paths of FinanceTracker, FileHandler and PartitionedLedger at several ledger sizes.
+// Usage: java -Xmx8g TrackerBenchmark [size ...]   (default: 10000 1000000 10000000)
+public class TrackerBenchmark
+{
+    private static final long SEED = 42;
+    private static final int QUERIES = 1000;
+
+    public static void main(String[] args) throws Exception
+    {
+        int[] sizes = {10_000, 1_000_000, 10_000_000};
+        if (args.length > 0)
+        {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+            {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        long sink = 0;
+        for (int size : sizes)
+        {
+            sink += run(size);
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static long run(int size) throws Exception
+    {
+        System.out.printf("--- %,d records ---%n", size);
+        SyntheticLedger ledger = new SyntheticLedger(size, SEED);
+        // Large ledgers take seconds per iteration, so they get fewer of them
+        BenchmarkRunner runner = size >= 1_000_000 ? new BenchmarkRunner(1, 3) : new BenchmarkRunner(5, 10);
+
+        runner.run("addRecord", size, () -> ledger.newTracker().getRecordsCount());
+
+        FinanceTracker tracker = ledger.newTracker();
+        runner.run("getTotalBalance", QUERIES, () ->
+        {
+            long result = 0;
+            for (int i = 0; i < QUERIES; i++)
+            {
+                result += (long) tracker.getTotalBalance();
+            }
+            return result;
+        });
+        // Deterministic query windows: a month for the record lists, a year for the statistics
+        SplittableRandom random = new SplittableRandom(SEED);
+        LocalDate[] monthStarts = new LocalDate[QUERIES];
+        LocalDate[] yearStarts = new LocalDate[QUERIES];
+        for (int i = 0; i < QUERIES; i++)
+        {
+            monthStarts[i] = SyntheticLedger.date(random.nextInt(SyntheticLedger.DAYS - 30));
+            yearStarts[i] = SyntheticLedger.date(random.nextInt(SyntheticLedger.DAYS - 365));
+        }
+        int rangeQueries = Math.max(10, QUERIES * 10_000 / Math.max(size, 10_000));
+        runner.run("getRecordsByDateRange (30 days)", rangeQueries, () ->
+        {
+            long result = 0;
+            for (int i = 0; i < rangeQueries; i++)
+            {
+                result += tracker.getRecordsByDateRange(monthStarts[i], monthStarts[i].plusDays(29)).size();
+            }
+            return result;
+        });
+        runner.run("getStatisticsByCategory (365 days)", QUERIES, () ->
+        {
+            long result = 0;
+            for (int i = 0; i < QUERIES; i++)
+            {
+                result += tracker.getStatisticsByCategory(yearStarts[i], yearStarts[i].plusDays(364)).size();
+            }
+            return result;
+        });
+        // A dashboard asking for the same few periods again is answered by the statistics cache
+        runner.run("getStatisticsByCategory (3 repeated periods)", QUERIES, () ->
+        {
+            long result = 0;
+            for (int i = 0; i < QUERIES; i++)
+            {
+                result += tracker.getStatisticsByCategory(yearStarts[i % 3], yearStarts[i % 3].plusDays(364)).size();
+            }
+            return result;
+        });
+        runner.run("getRecordsByCategory (Gift)", 1, () -> tracker.getRecordsByCategory("Gift").size());
+        runner.run("getRecords (Gift, INCOME, 30 days)", rangeQueries, () ->
+        {
+            long result = 0;
+            for (int i = 0; i < rangeQueries; i++)
+            {
+                result += tracker.getRecords("Gift", OperationType.INCOME,
+                        monthStarts[i], monthStarts[i].plusDays(29)).size();
+            }
+            return result;
+        });
+        runner.run("query (EXPENSE >= 100 by category, month)", 1, () -> tracker.query(new RecordQuery()
+                .type(OperationType.EXPENSE).minAmount(100)
+                .groupBy(RecordQuery.GroupBy.CATEGORY, RecordQuery.GroupBy.MONTH)).getRows().size());
+        runner.run("query parallel (EXPENSE >= 100 by category, month)", 1, () -> tracker.query(new RecordQuery()
+                .type(OperationType.EXPENSE).minAmount(100).parallel(true)
+                .groupBy(RecordQuery.GroupBy.CATEGORY, RecordQuery.GroupBy.MONTH)).getRows().size());
+        runner.run("getTrends (all days, daily)", 1, () -> tracker.getTrends(SyntheticLedger.date(0),
+                SyntheticLedger.date(SyntheticLedger.DAYS - 1), TrendSeries.Bucket.DAY).size());
+        runner.run("getTrends (all days, monthly)", 1, () -> tracker.getTrends(SyntheticLedger.date(0),
+                SyntheticLedger.date(SyntheticLedger.DAYS - 1), TrendSeries.Bucket.MONTH).size());
+        runner.run("getAllRecordsSortedByDate", 1, () -> tracker.getAllRecordsSortedByDate().size());
+
+        File file = File.createTempFile("finance-bench", ".csv");
+        file.deleteOnExit();
+        Path partitions = Files.createTempDirectory("finance-bench-partitions");
+        // The file operations report to System.out, which would dominate the small sizes
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try
+        {
+            runner.run("FileHandler.saveToFile", size, () ->
+            {
+                tracker.saveToFile(file.getPath());
+                return file.length();
+            });
+            runner.run("FileHandler.loadFromFile", size, () ->
+            {
+                FinanceTracker loaded = new FinanceTracker();
+                loaded.loadFromFile(file.getPath());
+                return loaded.getRecordsCount();
+            });
+            tracker.saveToPartitions(partitions.toString());
+            LocalDate quarterEnd = SyntheticLedger.date(SyntheticLedger.DAYS - 1);
+            runner.run("PartitionedLedger.open + getStatisticsByCategory (last 90 days)", 1, () ->
+            {
+                try (PartitionedLedger opened = PartitionedLedger.open(partitions))
+                {
+                    return opened.getStatisticsByCategory(quarterEnd.minusDays(89), quarterEnd).size();
+                }
+            });
+            runner.run("PartitionedLedger.open + getTotalsByCategory (summaries)", 1, () ->
+            {
+                try (PartitionedLedger opened = PartitionedLedger.open(partitions))
+                {
+                    return opened.getTotalsByCategory().size();
+                }
+            });
+        }
+        finally
+        {
+            System.setOut(console);
+            file.delete();
+            try (Stream<Path> files = Files.list(partitions))
+            {
+                for (Path partition : (Iterable<Path>) files::iterator)
+                {
+                    Files.delete(partition);
+                }
+            }
+            Files.delete(partitions);
+        }
+        return runner.getSink();
+    }
+}
@@ -0,0 +1,218 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+// Saves and loads a ConcurrentFinanceTracker in the background and returns CompletableFutures, so the caller
+// never waits for the disk. A save copies the records under the read lock when it starts, writes the copy to
+// a temporary file and moves it into place; a load parses the file into a batch away from the tracker and
+// publishes it in one step. Meanwhile the tracker stays queryable and shows its last consistent state.
+//
+// At most maxPending operations may be queued or running; beyond that the returned future fails at once
+// with a RejectedExecutionException. A cancelled future stops its operation at the next progress report
+// and leaves the tracker and the target file as they were.
+public class AsyncPersistence implements AutoCloseable
+{
+    public static final int DEFAULT_MAX_PENDING = 4;
+
+    // Receives the work done so far out of the total: records for saves, bytes for loads.
+    // Called on the I/O thread.
+    public interface ProgressListener
+    {
+        void onProgress(long done, long total);
+    }
+
+    private interface Operation
+    {
+        int run(CompletableFuture<Integer> future) throws Exception;
+    }
+
+    private final ConcurrentFinanceTracker tracker;
+    private final ExecutorService executor;
+    private final Semaphore pending;
+    private final FileHandler fileHandler = new FileHandler();
+    private final BinaryFileHandler binaryFileHandler = new BinaryFileHandler();
+
+    public AsyncPersistence(ConcurrentFinanceTracker tracker)
+    {
+        this(tracker, newIoExecutor(), DEFAULT_MAX_PENDING);
+    }
+    public AsyncPersistence(ConcurrentFinanceTracker tracker, ExecutorService executor, int maxPending)
+    {
+        if (maxPending < 1)
+        {
+            throw new IllegalArgumentException("At least one operation must be allowed");
+        }
+        this.tracker = tracker;
+        this.executor = executor;
+        this.pending = new Semaphore(maxPending);
+        this.fileHandler.setMetrics(tracker.getMetrics());
+    }
+
+    // Virtual threads when the runtime has them (Java 21 and later), otherwise daemon platform threads;
+    // the pending limit bounds the number of threads either way
+    public static ExecutorService newIoExecutor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            AtomicInteger threads = new AtomicInteger();
+            return Executors.newCachedThreadPool(task ->
+            {
+                Thread thread = new Thread(task, "finance-io-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Writes the records as they are when the save starts; completes with their number.
+    // Files ending with BinaryFileHandler.EXTENSION use the binary ledger format, all others CSV.
+    public CompletableFuture<Integer> saveAsync(String fileName, ProgressListener progress)
+    {
+        return submit(future -> save(fileName, progress, future));
+    }
+    // Adds the records of the file once all of them are read; completes with their number
+    public CompletableFuture<Integer> loadAsync(String fileName, ProgressListener progress)
+    {
+        return submit(future -> load(fileName, progress, future));
+    }
+
+    // Lets the accepted operations finish and stops the executor. An interrupt ends the wait early, with the
+    // thread's interrupt flag set again and the operations still running.
+    @Override
+    public void close()
+    {
+        executor.shutdown();
+        try
+        {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<Integer> submit(Operation operation)
+    {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        if (!pending.tryAcquire())
+        {
+            future.completeExceptionally(new RejectedExecutionException("Too many saves and loads in progress"));
+            return future;
+        }
+        try
+        {
+            executor.execute(() ->
+            {
+                try
+                {
+                    // A future cancelled while queued is already done
+                    if (!future.isDone())
+                    {
+                        future.complete(operation.run(future));
+                    }
+                }
+                catch (Throwable e)
+                {
+                    future.completeExceptionally(e);
+                }
+                finally
+                {
+                    pending.release();
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            pending.release();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+    private int save(String fileName, ProgressListener progress, CompletableFuture<Integer> future)
+            throws IOException
+    {
+        TrackerMetrics metrics = tracker.getMetrics();
+        long started = metrics.start();
+        RecordStore snapshot = tracker.snapshotRecords();
+        Path path = Paths.get(fileName).toAbsolutePath();
+        // Saves to the same file may run at once, so each writes its own temporary file next to the target
+        Path temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        LongConsumer report = reporter(future, progress, snapshot.size());
+        try
+        {
+            if (BinaryFileHandler.isBinaryFile(fileName))
+            {
+                binaryFileHandler.writeLedger(snapshot, temporary, report);
+            }
+            else
+            {
+                fileHandler.writeRecords(snapshot, temporary, report);
+            }
+            checkCancelled(future);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temporary);
+        }
+        metrics.recordTransfer(TrackerMetrics.Transfer.SAVE, started, snapshot.size(), Files.size(path));
+        return snapshot.size();
+    }
+    private int load(String fileName, ProgressListener progress, CompletableFuture<Integer> future)
+            throws IOException
+    {
+        TrackerMetrics metrics = tracker.getMetrics();
+        long started = metrics.start();
+        Path path = Paths.get(fileName);
+        long size = Files.size(path);
+        LongConsumer report = reporter(future, progress, size);
+        RecordBatch batch = new RecordBatch();
+        if (BinaryFileHandler.isBinaryFile(fileName))
+        {
+            binaryFileHandler.readLedger(path, batch.getDictionary(), batch, report);
+        }
+        else
+        {
+            fileHandler.readRecords(path, batch.getDictionary(), batch, report);
+        }
+        checkCancelled(future);
+        tracker.addRecords(batch);
+        metrics.recordTransfer(TrackerMetrics.Transfer.LOAD, started, batch.size(), size);
+        return batch.size();
+    }
+    // Passes the progress on and aborts the operation once its future is cancelled
+    private static LongConsumer reporter(CompletableFuture<Integer> future, ProgressListener progress, long total)
+    {
+        return done ->
+        {
+            checkCancelled(future);
+            if (progress != null)
+            {
+                progress.onProgress(done, total);
+            }
+        };
+    }
+    private static void checkCancelled(CompletableFuture<Integer> future)
+    {
+        if (future.isCancelled())
+        {
+            throw new CancellationException();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+// Binary ledger format, little-endian:
+//   header:     magic, version, record count, category count, rows per block, CRC32 of the preceding fields
+//   categories: for each category a UTF-8 name prefixed by its length, then CRC32 of the section
+//   blocks:     up to ROWS_PER_BLOCK fixed-width rows (id, epoch day, type, category index, cents), then CRC32
+public class BinaryFileHandler
+{
+    public static final String EXTENSION = ".ledger";
+
+    private static final int MAGIC = 0x424C5446; // "FTLB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int ROW_SIZE = 4 + 4 + 1 + 4 + 8;
+    private static final int ROWS_PER_BLOCK = 4096;
+    private static final int BLOCK_SIZE = ROWS_PER_BLOCK * ROW_SIZE + 4;
+    // Blocks are mapped in groups so that a single mapping stays well below the 2 GB limit
+    private static final int MAPPING_SIZE = 1 << 30;
+
+    public static boolean isBinaryFile(String fileName)
+    {
+        return fileName.toLowerCase().endsWith(EXTENSION);
+    }
+
+    // Writes the live records of the store together with its category dictionary and returns their number,
+    // or -1 if the file could not be written
+    public int saveToFile(RecordStore records, String fileName)
+    {
+        try
+        {
+            writeLedger(records, Paths.get(fileName));
+            System.out.println("The data has been successfully saved to a file: " + fileName);
+            return records.size();
+        }
+        catch (IOException e)
+        {
+            System.out.println("Error when saving to a file: " + e.getMessage());
+            return -1;
+        }
+    }
+    // Writes the ledger and forces it to the storage device before returning
+    public void writeLedger(RecordStore records, Path path) throws IOException
+    {
+        writeLedger(records, path, rows -> { });
+    }
+    // Same as writeLedger, passing the number of records written so far to progress after every block
+    public void writeLedger(RecordStore records, Path path, LongConsumer progress) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            CategoryDictionary dictionary = records.getDictionary();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(records.size())
+                    .putInt(dictionary.size()).putInt(ROWS_PER_BLOCK);
+            header.putInt(checksum(header, 0, header.position()));
+            header.flip();
+            writeFully(channel, header);
+
+            byte[][] names = new byte[dictionary.size()][];
+            int sectionSize = 4;
+            for (int id = 0; id < names.length; id++)
+            {
+                names[id] = dictionary.nameOf(id).getBytes(StandardCharsets.UTF_8);
+                sectionSize += 4 + names[id].length;
+            }
+            ByteBuffer section = ByteBuffer.allocate(sectionSize).order(ByteOrder.LITTLE_ENDIAN);
+            for (byte[] name : names)
+            {
+                section.putInt(name.length).put(name);
+            }
+            section.putInt(checksum(section, 0, section.position()));
+            section.flip();
+            writeFully(channel, section);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            int rowsInBlock = 0;
+            long rowsWritten = 0;
+            for (int slot = 0; slot < records.slotCount(); slot++)
+            {
+                if (records.isDeleted(slot))
+                {
+                    continue;
+                }
+                buffer.putInt(records.getId(slot))
+                        .putInt(records.getEpochDay(slot))
+                        .put((byte) records.getTypeOrdinal(slot))
+                        .putInt(records.getCategoryId(slot))
+                        .putLong(records.getCents(slot));
+                if (++rowsInBlock == ROWS_PER_BLOCK)
+                {
+                    writeBlock(channel, buffer);
+                    rowsWritten += rowsInBlock;
+                    rowsInBlock = 0;
+                    progress.accept(rowsWritten);
+                }
+            }
+            if (rowsInBlock > 0)
+            {
+                writeBlock(channel, buffer);
+                progress.accept(rowsWritten + rowsInBlock);
+            }
+            channel.force(true);
+        }
+    }
+
+    // Maps the file and streams its records into the sink; a block with a bad checksum is reported and skipped.
+    // Returns the number of records read, or -1 if the file could not be read.
+    public int loadFromFile(String fileName, CategoryDictionary dictionary, RecordSink sink)
+    {
+        int count = -1;
+        try
+        {
+            count = readLedger(Paths.get(fileName), dictionary, sink);
+            System.out.println("The data was successfully uploaded from a file: " + fileName);
+            System.out.println("Uploaded records: " + count);
+        }
+        catch (NoSuchFileException e)
+        {
+            System.err.println("File not found: " + fileName);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            System.err.println("Error reading the file: " + e.getMessage());
+        }
+        return count;
+    }
+    // Same as loadFromFile without the progress messages; returns the number of records read
+    public int readLedger(Path path, CategoryDictionary dictionary, RecordSink sink) throws IOException
+    {
+        return readLedger(path, dictionary, sink, bytes -> { });
+    }
+    // Same as readLedger, passing the number of bytes read so far to progress after every block
+    public int readLedger(Path path, CategoryDictionary dictionary, RecordSink sink, LongConsumer progress)
+            throws IOException
+    {
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC)
+            {
+                throw new IOException("Not a ledger file");
+            }
+            if (header.getInt(20) != checksum(header, 0, 20))
+            {
+                throw new IOException("The file header is corrupted");
+            }
+            if (header.getInt(4) != VERSION)
+            {
+                throw new IOException("Unsupported ledger version: " + header.getInt(4));
+            }
+            int recordCount = header.getInt(8);
+            int categoryCount = header.getInt(12);
+            int rowsPerBlock = header.getInt(16);
+            if (recordCount < 0 || categoryCount < 0 || rowsPerBlock <= 0 || rowsPerBlock > MAPPING_SIZE / ROW_SIZE)
+            {
+                throw new IOException("The file header is corrupted");
+            }
+
+            // The dictionary section has no fixed size, so it is read from a mapping of the rest of the file
+            long position = HEADER_SIZE;
+            ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(channel.size() - position, Integer.MAX_VALUE)).order(ByteOrder.LITTLE_ENDIAN);
+            // The lengths are checked against the section before its checksum can be, so that a corrupt
+            // length is reported like any other damage
+            if (section.remaining() < 4 || categoryCount > (section.remaining() - 4) / 4)
+            {
+                throw new IOException("The category dictionary is corrupted");
+            }
+            int[] mapping = new int[categoryCount];
+            for (int id = 0; id < categoryCount; id++)
+            {
+                int length = section.getInt();
+                if (length < 0 || length > section.remaining() - 4)
+                {
+                    throw new IOException("The category dictionary is corrupted");
+                }
+                byte[] name = new byte[length];
+                section.get(name);
+                mapping[id] = dictionary.idOf(new String(name, StandardCharsets.UTF_8));
+            }
+            if (section.getInt() != checksum(section, 0, section.position() - 4))
+            {
+                throw new IOException("The category dictionary is corrupted");
+            }
+            position += section.position();
+
+            int blockSize = rowsPerBlock * ROW_SIZE + 4;
+            int blocks = (int) (((long) recordCount + rowsPerBlock - 1) / rowsPerBlock);
+            int blocksPerMapping = MAPPING_SIZE / blockSize;
+            if (channel.size() < position + (long) recordCount * ROW_SIZE + blocks * 4L)
+            {
+                throw new IOException("The file is truncated");
+            }
+            OperationType[] types = OperationType.values();
+            for (int firstBlock = 0; firstBlock < blocks; firstBlock += blocksPerMapping)
+            {
+                int lastBlock = Math.min(blocks, firstBlock + blocksPerMapping);
+                int rowsBefore = firstBlock * rowsPerBlock;
+                int rowsInMapping = Math.min(recordCount - rowsBefore, (lastBlock - firstBlock) * rowsPerBlock);
+                long length = (long) rowsInMapping * ROW_SIZE + (lastBlock - firstBlock) * 4L;
+                ByteBuffer blocksBuffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                        position + (long) firstBlock * blockSize, length).order(ByteOrder.LITTLE_ENDIAN);
+
+                for (int block = firstBlock; block < lastBlock; block++)
+                {
+                    int start = (block - firstBlock) * blockSize;
+                    int rows = Math.min(rowsPerBlock, recordCount - block * rowsPerBlock);
+                    int end = start + rows * ROW_SIZE;
+                    if (blocksBuffer.getInt(end) != checksum(blocksBuffer, start, end))
+                    {
+                        System.out.println("Error reading block " + block + ": checksum mismatch, "
+                                + rows + " records skipped");
+                        continue;
+                    }
+                    for (int row = start; row < end; row += ROW_SIZE)
+                    {
+                        sink.accept(blocksBuffer.getInt(row), types[blocksBuffer.get(row + 8)],
+                                mapping[blocksBuffer.getInt(row + 9)], blocksBuffer.getLong(row + 13),
+                                blocksBuffer.getInt(row + 4));
+                        count++;
+                    }
+                    progress.accept(Math.min(channel.size(), position + (long) (block + 1) * blockSize));
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void writeBlock(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        buffer.putInt(checksum(buffer, 0, buffer.position()));
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+    private static int checksum(ByteBuffer buffer, int from, int to)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().limit(to).position(from));
+        return (int) crc.getValue();
+    }
+}
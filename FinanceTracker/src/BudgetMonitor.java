@@ -0,0 +1,249 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Monthly budgets of expense categories and the spending of every category and month, adjusted on every
+// add and remove like RunningTotals. When an expense moves a month's spending across a share of the
+// category's budget - 80% and 100% by default - the listeners get an Alert at once, so a check costs
+// a hash lookup and a few comparisons however large the ledger or the import is.
+public class BudgetMonitor
+{
+    public static final int[] DEFAULT_THRESHOLDS = {80, 100};
+    // Keeps percent * budget within a long
+    private static final int MAX_THRESHOLD = 1000;
+    private static final long MAX_BUDGET_CENTS = Long.MAX_VALUE / MAX_THRESHOLD;
+
+    // Called on the thread that changed the records, while the tracker is being changed:
+    // a listener must not modify the tracker
+    public interface Listener
+    {
+        void onBudgetAlert(Alert alert);
+    }
+
+    public static class Alert
+    {
+        private final String category;
+        private final YearMonth month;
+        private final int percent;
+        private final long spentCents;
+        private final long budgetCents;
+
+        public Alert(String category, YearMonth month, int percent, long spentCents, long budgetCents)
+        {
+            this.category = category;
+            this.month = month;
+            this.percent = percent;
+            this.spentCents = spentCents;
+            this.budgetCents = budgetCents;
+        }
+
+        public String getCategory()
+        {
+            return category;
+        }
+        public YearMonth getMonth()
+        {
+            return month;
+        }
+        // The threshold crossed, in percent of the budget
+        public int getPercent()
+        {
+            return percent;
+        }
+        // Spending of the month including the expense that crossed the threshold
+        public long getSpentCents()
+        {
+            return spentCents;
+        }
+        public long getBudgetCents()
+        {
+            return budgetCents;
+        }
+        @Override
+        public String toString()
+        {
+            return String.format("%s spending crossed %d%% of budget in %s: %s of %s",
+                    category, percent, month, Money.format(spentCents), Money.format(budgetCents));
+        }
+    }
+
+    private final CategoryDictionary dictionary;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Budget in cents by category id, 0 for none
+    private long[] budgets = new long[16];
+    private int[] thresholds = DEFAULT_THRESHOLDS.clone();
+    // Expenses in cents by category id and month number (year * 12 + month - 1)
+    private IntLongHashMap[] spending = new IntLongHashMap[16];
+
+    // The month of the last record: changes usually come in runs of nearby dates
+    private int monthStart = 0;
+    private int monthEnd = -1;
+    private int month;
+
+    // An update removes the record and adds it again; the part removed is held back so that the
+    // thresholds are compared with the spending before the whole update
+    private boolean updating;
+    private int heldCategory = -1;
+    private int heldMonth;
+    private long heldCents;
+
+    public BudgetMonitor(CategoryDictionary dictionary)
+    {
+        this.dictionary = dictionary;
+    }
+
+    // 0 removes the budget
+    public void setBudget(int categoryId, long cents)
+    {
+        if (cents < 0 || cents > MAX_BUDGET_CENTS)
+        {
+            throw new IllegalArgumentException("The budget must be between 0 and " + Money.format(MAX_BUDGET_CENTS));
+        }
+        if (categoryId >= budgets.length)
+        {
+            budgets = Arrays.copyOf(budgets, Math.max(categoryId + 1, budgets.length * 2));
+        }
+        budgets[categoryId] = cents;
+    }
+    // Budget of the category id in cents, 0 if it has none
+    public long getBudget(int categoryId)
+    {
+        return categoryId < budgets.length ? budgets[categoryId] : 0;
+    }
+    // Percentages of the budget that raise an alert when crossed, for example 50, 80, 100
+    public void setThresholds(int... percents)
+    {
+        int[] sorted = percents.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++)
+        {
+            if (sorted[i] < 1 || sorted[i] > MAX_THRESHOLD || i > 0 && sorted[i] == sorted[i - 1])
+            {
+                throw new IllegalArgumentException(
+                        "Thresholds must be distinct percentages from 1 to " + MAX_THRESHOLD);
+            }
+        }
+        thresholds = sorted;
+    }
+    public int[] getThresholds()
+    {
+        return thresholds.clone();
+    }
+    public void addListener(Listener listener)
+    {
+        listeners.add(listener);
+    }
+    public void removeListener(Listener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    public void add(int categoryId, int typeOrdinal, int epochDay, long cents)
+    {
+        if (typeOrdinal != OperationType.EXPENSE.ordinal())
+        {
+            return;
+        }
+        int monthNumber = monthOf(epochDay);
+        long after = spending(categoryId).add(monthNumber, cents);
+        long before = after - cents;
+        if (updating && heldCategory == categoryId && heldMonth == monthNumber)
+        {
+            before += heldCents;
+            heldCategory = -1;
+        }
+        long budget = getBudget(categoryId);
+        if (budget == 0 || after <= before || listeners.isEmpty())
+        {
+            return;
+        }
+        for (int percent : thresholds)
+        {
+            // The smallest spending that reaches the threshold
+            long limit = (percent * budget + 99) / 100;
+            if (before < limit && limit <= after)
+            {
+                Alert alert = new Alert(dictionary.nameOf(categoryId),
+                        YearMonth.of(Math.floorDiv(monthNumber, 12), Math.floorMod(monthNumber, 12) + 1),
+                        percent, after, budget);
+                for (Listener listener : listeners)
+                {
+                    listener.onBudgetAlert(alert);
+                }
+            }
+        }
+    }
+    public void remove(int categoryId, int typeOrdinal, int epochDay, long cents)
+    {
+        if (typeOrdinal != OperationType.EXPENSE.ordinal())
+        {
+            return;
+        }
+        int monthNumber = monthOf(epochDay);
+        spending(categoryId).add(monthNumber, -cents);
+        if (updating)
+        {
+            heldCategory = categoryId;
+            heldMonth = monthNumber;
+            heldCents = cents;
+        }
+    }
+    // Brackets the removal and the new addition of an updated record
+    public void beginUpdate()
+    {
+        updating = true;
+        heldCategory = -1;
+    }
+    public void endUpdate()
+    {
+        updating = false;
+        heldCategory = -1;
+    }
+    // Forgets the spending; budgets, thresholds and listeners stay
+    public void clear()
+    {
+        for (IntLongHashMap months : spending)
+        {
+            if (months != null)
+            {
+                months.clear();
+            }
+        }
+    }
+
+    // Expenses of the category id in the month
+    public long getSpending(int categoryId, YearMonth month)
+    {
+        if (categoryId >= spending.length || spending[categoryId] == null)
+        {
+            return 0;
+        }
+        return spending[categoryId].get(month.getYear() * 12 + month.getMonthValue() - 1, 0);
+    }
+
+    private IntLongHashMap spending(int categoryId)
+    {
+        if (categoryId >= spending.length)
+        {
+            spending = Arrays.copyOf(spending, Math.max(categoryId + 1, spending.length * 2));
+        }
+        if (spending[categoryId] == null)
+        {
+            spending[categoryId] = new IntLongHashMap();
+        }
+        return spending[categoryId];
+    }
+    private int monthOf(int epochDay)
+    {
+        if (epochDay < monthStart || epochDay > monthEnd)
+        {
+            LocalDate first = LocalDate.ofEpochDay(epochDay).withDayOfMonth(1);
+            monthStart = (int) first.toEpochDay();
+            monthEnd = monthStart + first.lengthOfMonth() - 1;
+            month = first.getYear() * 12 + first.getMonthValue() - 1;
+        }
+        return month;
+    }
+}
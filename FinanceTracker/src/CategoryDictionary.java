@@ -0,0 +1,115 @@
+import java.util.Arrays;
+
+// Dictionary encoding of category names: every distinct name gets a dense int id.
+// Names can also be looked up straight from a char buffer, so parsers only allocate
+// a String the first time they see a category.
+public class CategoryDictionary
+{
+    private String[] names = new String[16];
+    private int[] hashes = new int[16];
+    // Open-addressing table of id + 1, zero marks a free bucket
+    private int[] table = new int[32];
+    private int size;
+
+    // Returns the id of the category, registering it if it is new
+    public int idOf(String name)
+    {
+        int hash = name.hashCode();
+        int bucket = findBucket(name, hash);
+        return table[bucket] != 0 ? table[bucket] - 1 : register(name, hash, bucket);
+    }
+    // Same as idOf(String) for the characters chars[offset, offset + length)
+    public int idOf(char[] chars, int offset, int length)
+    {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++)
+        {
+            hash = 31 * hash + chars[i];
+        }
+        int bucket = hash & (table.length - 1);
+        while (table[bucket] != 0)
+        {
+            int id = table[bucket] - 1;
+            if (hashes[id] == hash && matches(names[id], chars, offset, length))
+            {
+                return id;
+            }
+            bucket = (bucket + 1) & (table.length - 1);
+        }
+        return register(new String(chars, offset, length), hash, bucket);
+    }
+    // Returns the id of the category or -1 if it was never registered
+    public int find(String name)
+    {
+        int bucket = findBucket(name, name.hashCode());
+        return table[bucket] - 1;
+    }
+    public String nameOf(int id)
+    {
+        return names[id];
+    }
+    public int size()
+    {
+        return size;
+    }
+
+    private int findBucket(String name, int hash)
+    {
+        int bucket = hash & (table.length - 1);
+        while (table[bucket] != 0)
+        {
+            int id = table[bucket] - 1;
+            if (hashes[id] == hash && names[id].equals(name))
+            {
+                return bucket;
+            }
+            bucket = (bucket + 1) & (table.length - 1);
+        }
+        return bucket;
+    }
+    private int register(String name, int hash, int bucket)
+    {
+        if (size == names.length)
+        {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        names[size] = name;
+        hashes[size] = hash;
+        table[bucket] = size + 1;
+        size++;
+        if (size * 2 > table.length)
+        {
+            rehash();
+        }
+        return size - 1;
+    }
+    private void rehash()
+    {
+        table = new int[table.length * 2];
+        for (int id = 0; id < size; id++)
+        {
+            int bucket = hashes[id] & (table.length - 1);
+            while (table[bucket] != 0)
+            {
+                bucket = (bucket + 1) & (table.length - 1);
+            }
+            table[bucket] = id + 1;
+        }
+    }
+    private static boolean matches(String name, char[] chars, int offset, int length)
+    {
+        if (name.length() != length)
+        {
+            return false;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            if (name.charAt(i) != chars[offset + i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// The declared type of every category, keyed by the dense ids of a CategoryDictionary.
+// Behaves as a Map<String, OperationType>, but callers holding a category id skip the String hashing.
+// Every name is also case-folded once into a group id, so case-insensitive matching compares ints.
+// Folding happens on the writer's side - on registration and through foldNewNames() - so that
+// concurrent readers never modify the registry.
+public class CategoryRegistry extends AbstractMap<String, OperationType>
+{
+    private final CategoryDictionary dictionary;
+    // Type by category id, null for names that are in the dictionary but not registered
+    private OperationType[] types = new OperationType[16];
+    private int size;
+
+    // Case-folded names and the folded id of every dictionary id below foldedCount
+    private final CategoryDictionary foldedNames = new CategoryDictionary();
+    private int[] foldedIds = new int[16];
+    private int foldedCount;
+
+    public CategoryRegistry(CategoryDictionary dictionary)
+    {
+        this.dictionary = dictionary;
+    }
+
+    // Type of the category id or null if it is not registered
+    public OperationType typeOf(int id)
+    {
+        return id < types.length ? types[id] : null;
+    }
+    // Registers the category id with the type unless it is registered already; returns true if it was added
+    public boolean registerIfAbsent(int id, OperationType type)
+    {
+        if (typeOf(id) != null)
+        {
+            return false;
+        }
+        set(id, type);
+        return true;
+    }
+    // Flags the ids of all folded dictionary names equal to the name ignoring case
+    public boolean[] matchIgnoreCase(String name)
+    {
+        boolean[] matches = new boolean[foldedCount];
+        int folded = foldedNames.find(fold(name));
+        if (folded < 0)
+        {
+            return matches;
+        }
+        for (int id = 0; id < foldedCount; id++)
+        {
+            matches[id] = foldedIds[id] == folded;
+        }
+        return matches;
+    }
+
+    @Override
+    public OperationType get(Object key)
+    {
+        if (!(key instanceof String))
+        {
+            return null;
+        }
+        int id = dictionary.find((String) key);
+        return id < 0 ? null : typeOf(id);
+    }
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return get(key) != null;
+    }
+    @Override
+    public OperationType put(String key, OperationType value)
+    {
+        if (value == null)
+        {
+            throw new NullPointerException("The category type cannot be null");
+        }
+        int id = dictionary.idOf(key);
+        OperationType previous = typeOf(id);
+        set(id, value);
+        return previous;
+    }
+    @Override
+    public OperationType remove(Object key)
+    {
+        if (!(key instanceof String))
+        {
+            return null;
+        }
+        int id = dictionary.find((String) key);
+        OperationType previous = id < 0 ? null : typeOf(id);
+        if (previous != null)
+        {
+            types[id] = null;
+            size--;
+        }
+        return previous;
+    }
+    @Override
+    public void clear()
+    {
+        Arrays.fill(types, null);
+        size = 0;
+    }
+    @Override
+    public int size()
+    {
+        return size;
+    }
+    @Override
+    public Set<Map.Entry<String, OperationType>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<String, OperationType>>()
+        {
+            @Override
+            public Iterator<Map.Entry<String, OperationType>> iterator()
+            {
+                return new Iterator<Map.Entry<String, OperationType>>()
+                {
+                    private int next = advance(0);
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return next < types.length;
+                    }
+                    @Override
+                    public Map.Entry<String, OperationType> next()
+                    {
+                        if (!hasNext())
+                        {
+                            throw new NoSuchElementException();
+                        }
+                        int id = next;
+                        next = advance(id + 1);
+                        return new SimpleImmutableEntry<>(dictionary.nameOf(id), types[id]);
+                    }
+                };
+            }
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    private int advance(int id)
+    {
+        while (id < types.length && types[id] == null)
+        {
+            id++;
+        }
+        return id;
+    }
+    private void set(int id, OperationType type)
+    {
+        if (id >= types.length)
+        {
+            types = Arrays.copyOf(types, Math.max(id + 1, types.length * 2));
+        }
+        if (types[id] == null)
+        {
+            size++;
+        }
+        types[id] = type;
+        foldNewNames();
+    }
+    // Folds the names added to the dictionary since the last call; writers call it after adding
+    // names to the dictionary, and it costs one comparison when there are none
+    public void foldNewNames()
+    {
+        if (foldedIds.length < dictionary.size())
+        {
+            foldedIds = Arrays.copyOf(foldedIds, Math.max(dictionary.size(), foldedIds.length * 2));
+        }
+        for (; foldedCount < dictionary.size(); foldedCount++)
+        {
+            foldedIds[foldedCount] = foldedNames.idOf(fold(dictionary.nameOf(foldedCount)));
+        }
+    }
+    // Two names fold to the same string exactly when String.equalsIgnoreCase holds for them
+    private static String fold(String name)
+    {
+        char[] chars = name.toCharArray();
+        for (int i = 0; i < chars.length; i++)
+        {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,396 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+// Thread-safe front of a FinanceTracker for many writers and concurrent readers.
+// addRecord only appends to one of several striped buffers, so writers neither contend with each other
+// nor wait for readers. A read publishes the buffered records into the tracker and runs while holding
+// the read lock, so it sees a consistent state that contains every record added before the read started.
+public class ConcurrentFinanceTracker
+{
+    // A writer whose buffer grows past this publishes it, if the tracker is not busy
+    private static final int PUBLISH_THRESHOLD = 4096;
+
+    private final FinanceTracker tracker;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, OperationType> categories;
+    private final AtomicInteger lastId;
+    private final Stripe[] stripes;
+
+    // Append buffer shared by the threads that hash to it
+    private static class Stripe
+    {
+        private RecordBatch batch = new RecordBatch();
+        // Set by an append and cleared by publish(), so readers see unpublished rows without locking the stripe
+        private volatile boolean pending;
+    }
+
+    public ConcurrentFinanceTracker()
+    {
+        this(new FinanceTracker());
+    }
+    // Takes over the tracker; it must not be used directly afterwards
+    public ConcurrentFinanceTracker(FinanceTracker tracker)
+    {
+        this.tracker = tracker;
+        this.categories = new ConcurrentHashMap<>(tracker.getCategories());
+        int maxId = 0;
+        for (FinancialRecord record : tracker.getAllRecords())
+        {
+            maxId = Math.max(maxId, record.getId());
+        }
+        this.lastId = new AtomicInteger(maxId);
+        // At least two stripes per core keeps collisions between writer threads rare
+        int stripeCount = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++)
+        {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    // Creates and adds a new record with category validation and returns its id
+    public int addRecord(OperationType type, String category, double amount, LocalDate date)
+    {
+        OperationType expectedType = categories.putIfAbsent(category, type);
+        if (expectedType != null && expectedType != type)
+        {
+            throw new IllegalArgumentException(
+                    String.format("The category '%s' must be of type '%s'",
+                    category, expectedType.getRussianName()));
+        }
+        int id = lastId.incrementAndGet();
+        append(id, type, category, Money.fromAmount(amount), (int) date.toEpochDay());
+        return id;
+    }
+    public void addRecord(FinancialRecord record)
+    {
+        if (record != null)
+        {
+            categories.putIfAbsent(record.getCategory(), record.getType());
+            lastId.accumulateAndGet(record.getId(), Math::max);
+            append(record.getId(), record.getType(), record.getCategory(),
+                    record.getCents(), (int) record.getDate().toEpochDay());
+        }
+    }
+    // Adds a whole batch, such as a loaded file, in one step: a reader sees either all of it or none of it
+    public void addRecords(RecordBatch batch)
+    {
+        write(tracker ->
+        {
+            tracker.addRecords(batch);
+            tracker.getCategories().forEach(categories::putIfAbsent);
+            int maxId = 0;
+            for (int i = 0; i < batch.size(); i++)
+            {
+                if (batch.hasId(i))
+                {
+                    maxId = Math.max(maxId, batch.getId(i));
+                }
+            }
+            lastId.accumulateAndGet(maxId, Math::max);
+            return null;
+        });
+    }
+    // Merges a file by record id, see FinanceTracker.importFromFile
+    public ImportResult importFromFile(String fileName)
+    {
+        return write(tracker ->
+        {
+            ImportResult result = tracker.importFromFile(fileName);
+            tracker.getCategories().forEach(categories::putIfAbsent);
+            if (result.getAdded() > 0)
+            {
+                int maxId = 0;
+                for (FinancialRecord record : tracker.getAllRecords())
+                {
+                    maxId = Math.max(maxId, record.getId());
+                }
+                lastId.accumulateAndGet(maxId, Math::max);
+            }
+            return result;
+        });
+    }
+    public void addCategory(String category, OperationType type)
+    {
+        write(tracker ->
+        {
+            tracker.addCategory(category, type);
+            categories.put(category.trim(), type);
+            return null;
+        });
+    }
+    public void setBudget(String category, double monthlyAmount)
+    {
+        write(tracker ->
+        {
+            tracker.setBudget(category, monthlyAmount);
+            return null;
+        });
+    }
+    public void setBudgetThresholds(int... percents)
+    {
+        write(tracker ->
+        {
+            tracker.setBudgetThresholds(percents);
+            return null;
+        });
+    }
+    // Records added from other threads raise their alerts when they are published
+    public void addBudgetListener(BudgetMonitor.Listener listener)
+    {
+        write(tracker ->
+        {
+            tracker.addBudgetListener(listener);
+            return null;
+        });
+    }
+    public void removeBudgetListener(BudgetMonitor.Listener listener)
+    {
+        write(tracker ->
+        {
+            tracker.removeBudgetListener(listener);
+            return null;
+        });
+    }
+    public boolean removeRecord(int id)
+    {
+        return write(tracker -> tracker.removeRecord(id));
+    }
+    public boolean updateRecord(int id, OperationType newType, String newCategory,
+                                double newAmount, LocalDate newDate)
+    {
+        return write(tracker -> tracker.updateRecord(id, newType, newCategory, newAmount, newDate));
+    }
+
+    // Runs several queries against one point-in-time state of the tracker; the tracker must not be modified
+    public <T> T read(Function<FinanceTracker, T> query)
+    {
+        if (hasPendingRows())
+        {
+            lock.writeLock().lock();
+            try
+            {
+                publish();
+                // Downgrading keeps other publishers out until the query is done, while other readers may proceed
+                lock.readLock().lock();
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+        else
+        {
+            // Nothing to publish: readers share the lock and never wait for each other
+            lock.readLock().lock();
+        }
+        try
+        {
+            return query.apply(tracker);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+    public List<FinancialRecord> getAllRecords()
+    {
+        return read(FinanceTracker::getAllRecords);
+    }
+    public List<FinancialRecord> getAllRecordsSortedByDate()
+    {
+        return read(FinanceTracker::getAllRecordsSortedByDate);
+    }
+    public List<FinancialRecord> getRecordsByDateRange(LocalDate start, LocalDate end)
+    {
+        return read(tracker -> tracker.getRecordsByDateRange(start, end));
+    }
+    public List<FinancialRecord> getRecordsByCategory(String category)
+    {
+        return read(tracker -> tracker.getRecordsByCategory(category));
+    }
+    public List<FinancialRecord> getRecordsByType(OperationType type)
+    {
+        return read(tracker -> tracker.getRecordsByType(type));
+    }
+    public List<FinancialRecord> getRecords(String category, OperationType type, LocalDate start, LocalDate end)
+    {
+        return read(tracker -> tracker.getRecords(category, type, start, end));
+    }
+    public QueryResult query(RecordQuery query)
+    {
+        return read(tracker -> tracker.query(query));
+    }
+    public Map<String, Double> getStatisticsByCategory(LocalDate start, LocalDate end)
+    {
+        return read(tracker -> tracker.getStatisticsByCategory(start, end));
+    }
+    public Map<OperationType, Double> getStatisticsByType(LocalDate start, LocalDate end)
+    {
+        return read(tracker -> tracker.getStatisticsByType(start, end));
+    }
+    public double getBalance(LocalDate start, LocalDate end)
+    {
+        return read(tracker -> tracker.getBalance(start, end));
+    }
+    public TrendSeries getTrends(LocalDate start, LocalDate end, TrendSeries.Bucket bucket)
+    {
+        return read(tracker -> tracker.getTrends(start, end, bucket));
+    }
+    public Map<String, Double> getBudgets()
+    {
+        return read(FinanceTracker::getBudgets);
+    }
+    public double getMonthlySpending(String category, YearMonth month)
+    {
+        return read(tracker -> tracker.getMonthlySpending(category, month));
+    }
+    public double getTotalBalance()
+    {
+        return read(FinanceTracker::getTotalBalance);
+    }
+    public double getTotalIncome()
+    {
+        return read(FinanceTracker::getTotalIncome);
+    }
+    public double getTotalExpenses()
+    {
+        return read(FinanceTracker::getTotalExpenses);
+    }
+    public long getTotalBalanceCents()
+    {
+        return read(FinanceTracker::getTotalBalanceCents);
+    }
+    public long getTotalIncomeCents()
+    {
+        return read(FinanceTracker::getTotalIncomeCents);
+    }
+    public long getTotalExpensesCents()
+    {
+        return read(FinanceTracker::getTotalExpensesCents);
+    }
+    public Map<String, Double> getTotalsByCategory()
+    {
+        return read(FinanceTracker::getTotalsByCategory);
+    }
+    public void checkTotals()
+    {
+        read(tracker ->
+        {
+            tracker.checkTotals();
+            return null;
+        });
+    }
+    public TrackerMetrics getMetrics()
+    {
+        return read(FinanceTracker::getMetrics);
+    }
+    // Consistent copy of the records as of now, see FinanceTracker.snapshotRecords
+    public RecordStore snapshotRecords()
+    {
+        return read(FinanceTracker::snapshotRecords);
+    }
+    public StatisticsCache getStatisticsCache()
+    {
+        return read(FinanceTracker::getStatisticsCache);
+    }
+    public void setParallelAggregation(ForkJoinPool pool, int threshold)
+    {
+        write(tracker ->
+        {
+            tracker.setParallelAggregation(pool, threshold);
+            return null;
+        });
+    }
+    public int getRecordsCount()
+    {
+        return read(FinanceTracker::getRecordsCount);
+    }
+    public Map<String, OperationType> getCategories()
+    {
+        return new HashMap<>(categories);
+    }
+
+    // Moves the buffered records into the tracker
+    public void flush()
+    {
+        write(tracker -> null);
+    }
+
+    private void append(int id, OperationType type, String category, long cents, int epochDay)
+    {
+        Stripe stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+        int buffered;
+        synchronized (stripe)
+        {
+            RecordBatch batch = stripe.batch;
+            batch.accept(id, type, batch.getDictionary().idOf(category), cents, epochDay);
+            buffered = batch.size();
+            stripe.pending = true;
+        }
+        // Never wait here: if a reader holds the tracker, the next read publishes the buffer anyway
+        if (buffered >= PUBLISH_THRESHOLD && lock.writeLock().tryLock())
+        {
+            try
+            {
+                publish();
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+    private <T> T write(Function<FinanceTracker, T> mutation)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            publish();
+            return mutation.apply(tracker);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+    // A row appended before this call is either still pending or already published
+    private boolean hasPendingRows()
+    {
+        for (Stripe stripe : stripes)
+        {
+            if (stripe.pending)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    // Must be called with the write lock held
+    private void publish()
+    {
+        for (Stripe stripe : stripes)
+        {
+            RecordBatch batch;
+            synchronized (stripe)
+            {
+                batch = stripe.batch;
+                if (batch.size() == 0)
+                {
+                    continue;
+                }
+                stripe.batch = new RecordBatch();
+                stripe.pending = false;
+            }
+            tracker.addRecords(batch);
+        }
+    }
+}
@@ -1,21 +1,30 @@
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.List;
 import java.util.Scanner;
 
 // A user interface class for interacting with the console
 public class ConsoleUI
 {
-    private FinanceTracker tracker;
+    private ConcurrentFinanceTracker tracker;
+    // Saves and loads run in the background so that the menu stays responsive
+    private AsyncPersistence persistence;
     private Scanner scanner;
     private DateTimeFormatter dateFormatter;
 
+    // Takes over the tracker until start() returns
     public ConsoleUI(FinanceTracker tracker)
+    {
+        this(new ConcurrentFinanceTracker(tracker));
+    }
+    public ConsoleUI(ConcurrentFinanceTracker tracker)
     {
         this.tracker = tracker;
+        this.persistence = new AsyncPersistence(tracker);
         this.scanner = new Scanner(System.in);
         this.dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        tracker.addBudgetListener(alert -> System.out.println("Budget alert: " + alert));
     }
     // The main method that starts an endless loop with a menu
     public void start()
@@ -50,7 +59,17 @@ public class ConsoleUI
                     case 6:
                         loadFromFile();
                         break;
+                    case 7:
+                        showMetrics();
+                        break;
+                    case 8:
+                        showTrends();
+                        break;
+                    case 9:
+                        setBudget();
+                        break;
                     case 0:
+                        finishBackgroundWork();
                         System.out.println("Goodbye!");
                         return;
                     default:
@@ -59,7 +78,7 @@ public class ConsoleUI
             }
             catch (NumberFormatException e)
             {
-                System.out.println("Error: Enter a number from 0 to 6.");
+                System.out.println("Error: Enter a number from 0 to 9.");
             }
             catch (Exception e)
             {
@@ -77,6 +96,9 @@ public class ConsoleUI
         System.out.println("4. Show statistics by category");
         System.out.println("5. Save data to a file");
         System.out.println("6. Download data from a file");
+        System.out.println("7. Show metrics");
+        System.out.println("8. Show trends");
+        System.out.println("9. Set monthly budget");
         System.out.println("0. Exit");
     }
     private void addNewRecord()
@@ -95,12 +117,14 @@ public class ConsoleUI
                 return;
             }
 
-            double amount = getAmountFromUser();
+            long cents = getAmountFromUser();
 
             LocalDate date = getDateFromUser();
 
-            FinancialRecord record = new FinancialRecord(0, type, category, amount, date);
+            FinancialRecord record = FinancialRecord.ofCents(0, type, category, cents, date);
             tracker.addRecord(record);
+            // Publishes the record at once, so that a budget alert it causes is shown now
+            tracker.flush();
             System.out.println("Record added successfully.");
         }
         catch (Exception e)
@@ -112,9 +136,9 @@ public class ConsoleUI
     {
         System.out.println("===All financial records===");
 
-        List<FinancialRecord> records = tracker.getAllRecords();
+        int count = tracker.getRecordsCount();
 
-        if (records.isEmpty())
+        if (count == 0)
         {
             System.out.println("No records found.");
             return;
@@ -123,28 +147,32 @@ public class ConsoleUI
                 "ID", "Type", "Category", "Amount", "Date");
         System.out.println("========================================");
 
-        for (FinancialRecord record : records)
+        tracker.read(records ->
         {
-            String typeStr = record.getType() == OperationType.INCOME ? "Income" : "Expense";
-            String amountStr = String.format("%.2f", record.getAmount());
-            String dateStr = record.getDate().format(dateFormatter);
+            records.forEachRecord(record ->
+            {
+                String typeStr = record.getType() == OperationType.INCOME ? "Income" : "Expense";
+                String amountStr = Money.format(record.getCents());
+                String dateStr = record.getDate().format(dateFormatter);
 
-            System.out.printf("%-4d %-10s %-20s %-10s %-12s%n",
-                    record.getId(), typeStr, record.getCategory(), amountStr, dateStr);
-        }
+                System.out.printf("%-4d %-10s %-20s %-10s %-12s%n",
+                        record.getId(), typeStr, record.getCategory(), amountStr, dateStr);
+            });
+            return null;
+        });
         System.out.println("========================================");
-        System.out.println("Total records: " + records.size());
+        System.out.println("Total records: " + count);
     }
     private void showBalance()
     {
         System.out.println("===Balance===");
-        double balance = tracker.getTotalBalance();
-        double totalIncome = tracker.getTotalIncome();
-        double totalExpense = tracker.getTotalExpenses();
+        long balance = tracker.getTotalBalanceCents();
+        long totalIncome = tracker.getTotalIncomeCents();
+        long totalExpense = tracker.getTotalExpensesCents();
 
-        System.out.printf("Total Income: %.2f%n", totalIncome);
-        System.out.printf("Total Expense: %.2f%n", totalExpense);
-        System.out.printf("Current balance: %.2f%n", balance);
+        System.out.printf("Total Income: %s%n", Money.format(totalIncome));
+        System.out.printf("Total Expense: %s%n", Money.format(totalExpense));
+        System.out.printf("Current balance: %s%n", Money.format(balance));
 
         if (balance > 0)
         {
@@ -199,6 +227,105 @@ public class ConsoleUI
             System.out.println("Error when getting statistics: " + e.getMessage());
         }
     }
+    private void showTrends()
+    {
+        System.out.println("===Trends===");
+
+        try
+        {
+            System.out.print("Enter the start date (yyyy-mm-dd): ");
+            LocalDate startDate = getDateFromUser();
+
+            System.out.print("Enter the end date (yyyy-mm-dd): ");
+            LocalDate endDate = getDateFromUser();
+
+            if (startDate.isAfter(endDate))
+            {
+                System.out.println("Error: The start cannot be later than the end date.");
+                return;
+            }
+            TrendSeries.Bucket bucket = getBucketFromUser();
+
+            System.out.print("Enter the number of periods for moving averages: ");
+            int window = Integer.parseInt(scanner.nextLine().trim());
+            if (window < 1)
+            {
+                System.out.println("Error: The number of periods must be at least 1.");
+                return;
+            }
+
+            TrendSeries trends = tracker.getTrends(startDate, endDate, bucket);
+            long[] runningBalance = trends.getRunningBalanceCents();
+            System.out.printf("Opening balance: %s%n", Money.format(trends.getOpeningBalanceCents()));
+            System.out.printf("%-12s %12s %12s %12s %14s%n", "Period", "Income", "Expense", "Balance", "Running");
+            System.out.println("==================================================================");
+            for (int i = 0; i < trends.size(); i++)
+            {
+                System.out.printf("%-12s %12s %12s %12s %14s%n", trends.getStart(i).format(dateFormatter),
+                        Money.format(trends.getIncomeCents(i)), Money.format(trends.getExpensesCents(i)),
+                        Money.format(trends.getBalanceCents(i)), Money.format(runningBalance[i]));
+            }
+
+            if (trends.getCategories().isEmpty())
+            {
+                System.out.println("There is no data for the specified period.");
+                return;
+            }
+            System.out.printf("%d-period moving averages in the last period:%n", window);
+            System.out.println("==================================================================");
+            for (String category : trends.getCategories())
+            {
+                double[] averages = trends.getMovingAverage(category, window);
+                System.out.printf("Category: %-20s Average: %10.2f%n", category, averages[averages.length - 1]);
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            System.out.println("Error: Invalid number format.");
+        }
+        catch (Exception e)
+        {
+            System.out.println("Error when getting trends: " + e.getMessage());
+        }
+    }
+    private void setBudget()
+    {
+        System.out.println("===Monthly budgets===");
+        YearMonth month = YearMonth.now();
+        for (var entry : tracker.getBudgets().entrySet())
+        {
+            System.out.printf("Category: %-20s Budget: %10.2f Spent in %s: %10.2f%n", entry.getKey(),
+                    entry.getValue(), month, tracker.getMonthlySpending(entry.getKey(), month));
+        }
+
+        try
+        {
+            System.out.print("Enter an expense category: ");
+            String category = scanner.nextLine().trim();
+            if (category.isEmpty())
+            {
+                System.out.println("Error: Category cannot be empty.");
+                return;
+            }
+            System.out.print("Enter the monthly budget (0 to remove): ");
+            long cents = Money.parse(scanner.nextLine().trim());
+            if (cents < 0)
+            {
+                System.out.println("Error: The budget cannot be negative.");
+                return;
+            }
+            tracker.setBudget(category, Money.toAmount(cents));
+            System.out.println(cents == 0 ? "Budget removed." : "Budget set successfully.");
+        }
+        catch (NumberFormatException e)
+        {
+            System.out.println("Error: Invalid amount format.");
+        }
+        catch (Exception e)
+        {
+            System.out.println("Error when setting the budget: " + e.getMessage());
+        }
+    }
     private void saveToFile()
     {
         System.out.println("Enter the file name to save: ");
@@ -209,7 +336,18 @@ public class ConsoleUI
             System.out.println("Error: File name cannot be empty.");
             return;
         }
-        tracker.saveToFile(fileName);
+        System.out.println("Saving in the background: " + fileName);
+        persistence.saveAsync(fileName, null).whenComplete((count, error) ->
+        {
+            if (error == null)
+            {
+                System.out.println("The data has been successfully saved to a file: " + fileName);
+            }
+            else
+            {
+                System.out.println("Error when saving to a file: " + rootCause(error).getMessage());
+            }
+        });
     }
     private void loadFromFile()
     {
@@ -221,7 +359,44 @@ public class ConsoleUI
             System.out.println("Error: File name cannot be empty.");
             return;
         }
-        tracker.loadFromFile(fileName);
+        System.out.println("Loading in the background: " + fileName);
+        persistence.loadAsync(fileName, null).whenComplete((count, error) ->
+        {
+            if (error == null)
+            {
+                System.out.println("The data was successfully uploaded from a file: " + fileName);
+                System.out.println("Uploaded records: " + count);
+            }
+            else
+            {
+                System.out.println("Error reading the file: " + rootCause(error).getMessage());
+            }
+        });
+    }
+    // Waits for the saves and loads still running and publishes every record into the tracker
+    private void finishBackgroundWork()
+    {
+        persistence.close();
+        tracker.flush();
+    }
+    private static Throwable rootCause(Throwable error)
+    {
+        while (error.getCause() != null)
+        {
+            error = error.getCause();
+        }
+        return error;
+    }
+    private void showMetrics()
+    {
+        System.out.println("===Metrics===");
+        TrackerMetrics metrics = tracker.getMetrics();
+        System.out.print(metrics.dump());
+        System.out.print(metrics.isEnabled() ? "Turn the metrics off? (y/n): " : "Turn the metrics on? (y/n): ");
+        if (scanner.nextLine().trim().equalsIgnoreCase("y"))
+        {
+            metrics.setEnabled(!metrics.isEnabled());
+        }
     }
     private OperationType getOperationTypeFromUser()
     {
@@ -241,14 +416,34 @@ public class ConsoleUI
             }
         }
     }
-    private double getAmountFromUser()
+    private TrendSeries.Bucket getBucketFromUser()
+    {
+        while (true)
+        {
+            System.out.print("Enter the period (1 for day, 2 for week, 3 for month): ");
+            String input = scanner.nextLine().trim();
+
+            switch (input)
+            {
+                case "1":
+                    return TrendSeries.Bucket.DAY;
+                case "2":
+                    return TrendSeries.Bucket.WEEK;
+                case "3":
+                    return TrendSeries.Bucket.MONTH;
+                default:
+                    System.out.println("Invalid input. Please enter 1, 2 or 3.");
+            }
+        }
+    }
+    private long getAmountFromUser()
     {
         while(true)
         {
             System.out.print("Enter the amount: ");
             try
             {
-                double amount = Double.parseDouble(scanner.nextLine().trim());
+                long amount = Money.parse(scanner.nextLine().trim());
                 if (amount <= 0)
                 {
                     System.out.println("Error: Amount must be greater than zero.");
@@ -0,0 +1,443 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Streaming CSV parser for "id,type,category,amount,date" lines in UTF-8.
+// Fields are parsed in place from a reusable byte buffer; a line that does not fit
+// the fast path is handed to the String-based parser, which also reports the errors.
+public class CsvRecordParser
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int DAYS_0000_TO_1970 = 719528;
+    private static final byte[] INCOME = "INCOME".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXPENSE = "EXPENSE".getBytes(StandardCharsets.US_ASCII);
+
+    private final CategoryDictionary dictionary;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private char[] chars = new char[64];
+    private final int[] fieldStarts = new int[5];
+    private final int[] fieldEnds = new int[5];
+    private Consumer<String> errorListener = System.out::println;
+    private boolean skipTitle = true;
+    private InputStream input;
+    private ByteBuffer region;
+
+    public CsvRecordParser(CategoryDictionary dictionary)
+    {
+        this.dictionary = dictionary;
+    }
+
+    // Receives the messages about lines that could not be parsed; they are printed by default
+    public void setErrorListener(Consumer<String> errorListener)
+    {
+        this.errorListener = errorListener;
+    }
+    // Whether the first line is a title; chunks taken from the middle of a file have none
+    public void setSkipTitle(boolean skipTitle)
+    {
+        this.skipTitle = skipTitle;
+    }
+
+    // Parses every line of the stream and returns the number of records passed to the sink
+    public int parse(InputStream input, RecordSink sink) throws IOException
+    {
+        this.input = input;
+        this.region = null;
+        return parse(sink);
+    }
+    // Parses the remaining bytes of the buffer, for example a memory-mapped chunk of a file
+    public int parse(ByteBuffer region, RecordSink sink) throws IOException
+    {
+        this.input = null;
+        this.region = region;
+        return parse(sink);
+    }
+
+    private int parse(RecordSink sink) throws IOException
+    {
+        int count = 0;
+        int position = 0;
+        int limit = 0;
+        boolean firstLine = skipTitle;
+        boolean skipLineFeed = false;
+        boolean endOfInput = false;
+
+        while (true)
+        {
+            int lineEnd = position;
+            while (lineEnd < limit && buffer[lineEnd] != '\n' && buffer[lineEnd] != '\r')
+            {
+                lineEnd++;
+            }
+            if (lineEnd == limit && !endOfInput)
+            {
+                // Incomplete line: move it to the front of the buffer and read more
+                if (position > 0)
+                {
+                    System.arraycopy(buffer, position, buffer, 0, limit - position);
+                    limit -= position;
+                    position = 0;
+                }
+                if (limit == buffer.length)
+                {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = read(limit, buffer.length - limit);
+                if (read < 0)
+                {
+                    endOfInput = true;
+                }
+                else
+                {
+                    if (skipLineFeed && limit == 0 && read > 0 && buffer[0] == '\n')
+                    {
+                        System.arraycopy(buffer, 1, buffer, 0, read - 1);
+                        read--;
+                    }
+                    skipLineFeed = false;
+                    limit += read;
+                }
+                continue;
+            }
+            if (lineEnd == limit && position == limit)
+            {
+                return count;
+            }
+
+            if (firstLine)
+            {
+                // Skipping the title
+                firstLine = false;
+            }
+            else if (!isBlank(position, lineEnd) && parseLine(position, lineEnd, sink))
+            {
+                count++;
+            }
+
+            position = lineEnd;
+            if (position < limit)
+            {
+                // A "\r\n" pair ends a single line
+                if (buffer[position++] == '\r')
+                {
+                    if (position < limit)
+                    {
+                        if (buffer[position] == '\n')
+                        {
+                            position++;
+                        }
+                    }
+                    else
+                    {
+                        skipLineFeed = true;
+                    }
+                }
+            }
+        }
+    }
+    private int read(int offset, int length) throws IOException
+    {
+        if (input != null)
+        {
+            return input.read(buffer, offset, length);
+        }
+        if (!region.hasRemaining())
+        {
+            return -1;
+        }
+        int count = Math.min(length, region.remaining());
+        region.get(buffer, offset, count);
+        return count;
+    }
+
+    private boolean parseLine(int start, int end, RecordSink sink)
+    {
+        int fields = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++)
+        {
+            if (i == end || buffer[i] == ',')
+            {
+                if (fields == fieldStarts.length)
+                {
+                    return parseSlow(start, end, sink);
+                }
+                int from = fieldStart;
+                int to = i;
+                while (from < to && (buffer[from] & 0xFF) <= ' ')
+                {
+                    from++;
+                }
+                while (to > from && (buffer[to - 1] & 0xFF) <= ' ')
+                {
+                    to--;
+                }
+                fieldStarts[fields] = from;
+                fieldEnds[fields] = to;
+                fields++;
+                fieldStart = i + 1;
+            }
+        }
+        if (fields != fieldStarts.length)
+        {
+            return parseSlow(start, end, sink);
+        }
+
+        long id = parseInt(fieldStarts[0], fieldEnds[0]);
+        OperationType type = parseType(fieldStarts[1], fieldEnds[1]);
+        long cents = parseCents(fieldStarts[3], fieldEnds[3]);
+        long epochDay = parseEpochDay(fieldStarts[4], fieldEnds[4]);
+        if (id == Long.MIN_VALUE || type == null || cents == Long.MIN_VALUE || epochDay == Long.MIN_VALUE)
+        {
+            return parseSlow(start, end, sink);
+        }
+        int categoryId = categoryId(fieldStarts[2], fieldEnds[2]);
+        sink.accept((int) id, type, categoryId, cents, (int) epochDay);
+        return true;
+    }
+    // String-based parsing, used for lines outside the fast path and for reporting errors
+    private boolean parseSlow(int start, int end, RecordSink sink)
+    {
+        String line = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+        int id;
+        OperationType type;
+        String category;
+        long cents;
+        LocalDate date;
+        try
+        {
+            String[] parts = line.split(",");
+
+            if (parts.length != 5)
+            {
+                throw new IllegalArgumentException("Incorrect number of fields in a row: " + parts.length);
+            }
+
+            id = Integer.parseInt(parts[0].trim());
+            type = OperationType.valueOf(parts[1].trim());
+            category = parts[2].trim();
+
+            cents = Money.parse(parts[3].trim());
+            date = LocalDate.parse(parts[4].trim());
+        }
+        catch (Exception e)
+        {
+            errorListener.accept("Error parsing a string: " + line + " - " + e.getMessage());
+            return false;
+        }
+        sink.accept(id, type, dictionary.idOf(category), cents, (int) date.toEpochDay());
+        return true;
+    }
+
+    private boolean isBlank(int start, int end)
+    {
+        for (int i = start; i < end; i++)
+        {
+            if ((buffer[i] & 0xFF) > ' ')
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+    // Returns the value or Long.MIN_VALUE if the field is not a plain int
+    private long parseInt(int start, int end)
+    {
+        boolean negative = start < end && buffer[start] == '-';
+        if (start < end && (buffer[start] == '-' || buffer[start] == '+'))
+        {
+            start++;
+        }
+        if (start == end || end - start > 10)
+        {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++)
+        {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9)
+            {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? Long.MIN_VALUE : value;
+    }
+    private OperationType parseType(int start, int end)
+    {
+        if (matches(INCOME, start, end))
+        {
+            return OperationType.INCOME;
+        }
+        if (matches(EXPENSE, start, end))
+        {
+            return OperationType.EXPENSE;
+        }
+        return null;
+    }
+    // Parses a plain decimal into cents, rounding half up; Long.MIN_VALUE if the format is unusual
+    private long parseCents(int start, int end)
+    {
+        boolean negative = start < end && buffer[start] == '-';
+        if (start < end && (buffer[start] == '-' || buffer[start] == '+'))
+        {
+            start++;
+        }
+        long units = 0;
+        int digits = 0;
+        int i = start;
+        while (i < end && buffer[i] >= '0' && buffer[i] <= '9')
+        {
+            units = units * 10 + (buffer[i++] - '0');
+            digits++;
+        }
+        if (digits > 15)
+        {
+            return Long.MIN_VALUE;
+        }
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < end && buffer[i] == '.')
+        {
+            i++;
+            while (i < end && buffer[i] >= '0' && buffer[i] <= '9')
+            {
+                if (fractionDigits < Money.SCALE)
+                {
+                    fraction = fraction * 10 + (buffer[i] - '0');
+                }
+                else if (fractionDigits == Money.SCALE)
+                {
+                    roundUp = buffer[i] >= '5';
+                }
+                fractionDigits++;
+                i++;
+            }
+        }
+        if (i != end || digits + fractionDigits == 0)
+        {
+            return Long.MIN_VALUE;
+        }
+        for (int k = fractionDigits; k < Money.SCALE; k++)
+        {
+            fraction *= 10;
+        }
+        long cents = units * Money.UNIT + fraction + (roundUp ? 1 : 0);
+        return negative ? -cents : cents;
+    }
+    // Parses an ISO yyyy-MM-dd date into an epoch day; Long.MIN_VALUE if it is not a valid date
+    private long parseEpochDay(int start, int end)
+    {
+        if (end - start != 10 || buffer[start + 4] != '-' || buffer[start + 7] != '-')
+        {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(start, start + 4);
+        int month = digits(start + 5, start + 7);
+        int day = digits(start + 8, start + 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month))
+        {
+            return Long.MIN_VALUE;
+        }
+        // Same arithmetic as LocalDate.toEpochDay for non-negative years
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12 + day - 1;
+        if (month > 2)
+        {
+            total -= isLeapYear(year) ? 1 : 2;
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+    private int digits(int start, int end)
+    {
+        int value = 0;
+        for (int i = start; i < end; i++)
+        {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9)
+            {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+    private boolean matches(byte[] expected, int start, int end)
+    {
+        if (end - start != expected.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++)
+        {
+            if (buffer[start + i] != expected[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+    // Decodes the UTF-8 category name into the scratch buffer and looks it up without allocating
+    private int categoryId(int start, int end)
+    {
+        if (chars.length < end - start)
+        {
+            chars = new char[end - start];
+        }
+        int length = 0;
+        for (int i = start; i < end; i++)
+        {
+            int b = buffer[i] & 0xFF;
+            if (b < 0x80)
+            {
+                chars[length++] = (char) b;
+            }
+            else if (b >= 0xC2 && b <= 0xDF && i + 1 < end && isContinuation(buffer[i + 1]))
+            {
+                chars[length++] = (char) (((b & 0x1F) << 6) | (buffer[++i] & 0x3F));
+            }
+            else if (b >= 0xE1 && b <= 0xEF && b != 0xED && i + 2 < end
+                    && isContinuation(buffer[i + 1]) && isContinuation(buffer[i + 2]))
+            {
+                chars[length++] = (char) (((b & 0x0F) << 12) | ((buffer[i + 1] & 0x3F) << 6) | (buffer[i + 2] & 0x3F));
+                i += 2;
+            }
+            else
+            {
+                // Rare sequences are left to the JDK decoder
+                return dictionary.idOf(new String(buffer, start, end - start, StandardCharsets.UTF_8));
+            }
+        }
+        return dictionary.idOf(chars, 0, length);
+    }
+    private static boolean isContinuation(byte b)
+    {
+        return (b & 0xC0) == 0x80;
+    }
+    private static int lengthOfMonth(int year, int month)
+    {
+        switch (month)
+        {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+    private static boolean isLeapYear(int year)
+    {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+}
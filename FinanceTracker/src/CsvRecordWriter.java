@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// Formats "id,type,category,amount,date" lines in UTF-8 straight into a reusable byte buffer.
+// Numbers and dates are encoded by hand, so a line costs no Strings and no String.format;
+// the output matches what FileHandler wrote with String.format("%.2f") and LocalDate.toString().
+public class CsvRecordWriter
+{
+    public static final String TITLE = "id,type,category,amount,date";
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[][] TYPES = new byte[OperationType.values().length][];
+    private static final int MIN_DAY = (int) LocalDate.of(1, 1, 1).toEpochDay();
+    private static final int MAX_DAY = (int) LocalDate.of(9999, 12, 31).toEpochDay();
+
+    static
+    {
+        for (OperationType type : OperationType.values())
+        {
+            TYPES[type.ordinal()] = type.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final CategoryDictionary dictionary;
+    // UTF-8 names by category id, encoded on first use
+    private byte[][] categories = new byte[16][];
+    private byte[] buffer;
+    private int position;
+
+    public CsvRecordWriter(CategoryDictionary dictionary, int capacity)
+    {
+        this.dictionary = dictionary;
+        this.buffer = new byte[Math.max(capacity, 64)];
+    }
+
+    public void writeTitle()
+    {
+        ensureCapacity(TITLE.length() + LINE_SEPARATOR.length);
+        for (int i = 0; i < TITLE.length(); i++)
+        {
+            buffer[position++] = (byte) TITLE.charAt(i);
+        }
+        writeBytes(LINE_SEPARATOR);
+    }
+    // Appends the record in the slot of the store, which must use this writer's dictionary
+    public void write(RecordStore records, int slot)
+    {
+        write(records.getId(slot), records.getTypeOrdinal(slot), records.getCategoryId(slot),
+                records.getCents(slot), records.getEpochDay(slot));
+    }
+    public void write(int id, int typeOrdinal, int categoryId, long cents, int epochDay)
+    {
+        byte[] category = categoryBytes(categoryId);
+        // id, type, amount and date take at most 11 + 7 + 21 + 11 bytes, plus separators
+        ensureCapacity(64 + category.length);
+        writeLong(id);
+        buffer[position++] = ',';
+        writeBytes(TYPES[typeOrdinal]);
+        buffer[position++] = ',';
+        writeBytes(category);
+        buffer[position++] = ',';
+        writeCents(cents);
+        buffer[position++] = ',';
+        writeDate(epochDay);
+        writeBytes(LINE_SEPARATOR);
+    }
+
+    public int size()
+    {
+        return position;
+    }
+    public void clear()
+    {
+        position = 0;
+    }
+    // Writes the formatted lines at the channel's position and clears the buffer
+    public void writeTo(FileChannel channel) throws IOException
+    {
+        ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, position);
+        while (bytes.hasRemaining())
+        {
+            channel.write(bytes);
+        }
+        position = 0;
+    }
+
+    private byte[] categoryBytes(int categoryId)
+    {
+        if (categoryId >= categories.length)
+        {
+            categories = Arrays.copyOf(categories, Math.max(categoryId + 1, categories.length * 2));
+        }
+        byte[] name = categories[categoryId];
+        if (name == null)
+        {
+            name = dictionary.nameOf(categoryId).getBytes(StandardCharsets.UTF_8);
+            categories[categoryId] = name;
+        }
+        return name;
+    }
+    private void writeBytes(byte[] bytes)
+    {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+    // Same digits as Long.toString, written backwards into place
+    private void writeLong(long value)
+    {
+        if (value < 0)
+        {
+            if (value == Long.MIN_VALUE)
+            {
+                writeBytes(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10)
+        {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--)
+        {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+    // Cents as an amount with exactly two decimals
+    private void writeCents(long cents)
+    {
+        if (cents == Long.MIN_VALUE)
+        {
+            writeBytes(Money.format(cents).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        if (cents < 0)
+        {
+            buffer[position++] = '-';
+            cents = -cents;
+        }
+        writeLong(cents / 100);
+        buffer[position++] = '.';
+        buffer[position++] = (byte) ('0' + cents % 100 / 10);
+        buffer[position++] = (byte) ('0' + cents % 10);
+    }
+    // ISO yyyy-MM-dd; years outside 1..9999 are left to LocalDate
+    private void writeDate(int epochDay)
+    {
+        if (epochDay < MIN_DAY || epochDay > MAX_DAY)
+        {
+            writeBytes(LocalDate.ofEpochDay(epochDay).toString().getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        // Civil date from a day count, using 400-year eras that start on March 1st
+        int shifted = epochDay + 719468;
+        int era = shifted / 146097;
+        int dayOfEra = shifted - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        buffer[position++] = (byte) ('0' + year / 1000);
+        buffer[position++] = (byte) ('0' + year / 100 % 10);
+        buffer[position++] = (byte) ('0' + year / 10 % 10);
+        buffer[position++] = (byte) ('0' + year % 10);
+        buffer[position++] = '-';
+        buffer[position++] = (byte) ('0' + month / 10);
+        buffer[position++] = (byte) ('0' + month % 10);
+        buffer[position++] = '-';
+        buffer[position++] = (byte) ('0' + day / 10);
+        buffer[position++] = (byte) ('0' + day % 10);
+    }
+    private void ensureCapacity(int additional)
+    {
+        if (position + additional > buffer.length)
+        {
+            buffer = Arrays.copyOf(buffer, Math.max(position + additional, buffer.length * 2));
+        }
+    }
+}
@@ -0,0 +1,252 @@
+import java.util.Arrays;
+
+// Per-day sums and counts keyed by (category id, operation type), kept as prefix-sum trees over epoch days.
+// Records outside the span the trees can grow to are kept in a small overflow list that queries scan
+// alongside, so a few mistyped years do not cost the rollup; only too many of them do.
+public class DailyRollup
+{
+    private static final int TYPE_COUNT = OperationType.values().length;
+    private static final int INITIAL_DAYS = 512;
+    // Longest span of the trees, about 180 years
+    private static final int MAX_DAYS = 1 << 16;
+    // Beyond this many records outside the span the rollup stops tracking and callers fall back to scanning
+    private static final int MAX_OVERFLOW = 4096;
+
+    private int baseDay;
+    private int length;
+    private boolean available = true;
+
+    private FenwickTree[] sums = new FenwickTree[0];
+    private FenwickTree[] counts = new FenwickTree[0];
+    private FenwickTree[] typeSums = new FenwickTree[TYPE_COUNT];
+    private FenwickTree[] typeCounts = new FenwickTree[TYPE_COUNT];
+
+    // Records outside the span of the trees, in no particular order
+    private int[] overflowDays = new int[16];
+    private int[] overflowKeys = new int[16];
+    private long[] overflowCents = new long[16];
+    private int overflowSize;
+
+    public void add(int day, int category, int type, long cents)
+    {
+        apply(day, category, type, cents, 1);
+    }
+    public void remove(int day, int category, int type, long cents)
+    {
+        apply(day, category, type, -cents, -1);
+    }
+    public void clear()
+    {
+        length = 0;
+        available = true;
+        sums = new FenwickTree[0];
+        counts = new FenwickTree[0];
+        typeSums = new FenwickTree[TYPE_COUNT];
+        typeCounts = new FenwickTree[TYPE_COUNT];
+        overflowSize = 0;
+    }
+    // False once too many records fell outside the trackable span; cleared only by clear()
+    public boolean isAvailable()
+    {
+        return available;
+    }
+    // Records kept outside the trees because their day lies outside the trackable span
+    public int getOverflowCount()
+    {
+        return overflowSize;
+    }
+
+    // Sum in cents of the records of the category and type within [startDay, endDay]
+    public long sum(int category, int type, int startDay, int endDay)
+    {
+        return rangeSum(sums, key(category, type), startDay, endDay)
+                + overflowSum(key(category, type), -1, startDay, endDay, false);
+    }
+    public long count(int category, int type, int startDay, int endDay)
+    {
+        return rangeSum(counts, key(category, type), startDay, endDay)
+                + overflowSum(key(category, type), -1, startDay, endDay, true);
+    }
+    public long sumByType(int type, int startDay, int endDay)
+    {
+        return rangeSum(typeSums, type, startDay, endDay) + overflowSum(-1, type, startDay, endDay, false);
+    }
+    public long countByType(int type, int startDay, int endDay)
+    {
+        return rangeSum(typeCounts, type, startDay, endDay) + overflowSum(-1, type, startDay, endDay, true);
+    }
+
+    private void apply(int day, int category, int type, long cents, int count)
+    {
+        if (!available)
+        {
+            return;
+        }
+        int key = key(category, type);
+        if (cover(day))
+        {
+            addToTrees(day, key, cents, count);
+        }
+        else if (count > 0)
+        {
+            addOverflow(day, key, cents);
+        }
+        else
+        {
+            removeOverflow(day, key, -cents);
+        }
+    }
+    private void addToTrees(int day, int key, long cents, int count)
+    {
+        if (key >= sums.length)
+        {
+            int newLength = Math.max(key + 1, sums.length * 2);
+            sums = Arrays.copyOf(sums, newLength);
+            counts = Arrays.copyOf(counts, newLength);
+        }
+        int index = day - baseDay;
+        tree(sums, key).add(index, cents);
+        tree(counts, key).add(index, count);
+        tree(typeSums, key % TYPE_COUNT).add(index, cents);
+        tree(typeCounts, key % TYPE_COUNT).add(index, count);
+    }
+    private void addOverflow(int day, int key, long cents)
+    {
+        if (overflowSize == MAX_OVERFLOW)
+        {
+            available = false;
+            sums = new FenwickTree[0];
+            counts = new FenwickTree[0];
+            typeSums = new FenwickTree[TYPE_COUNT];
+            typeCounts = new FenwickTree[TYPE_COUNT];
+            overflowSize = 0;
+            return;
+        }
+        if (overflowSize == overflowDays.length)
+        {
+            overflowDays = Arrays.copyOf(overflowDays, overflowSize * 2);
+            overflowKeys = Arrays.copyOf(overflowKeys, overflowSize * 2);
+            overflowCents = Arrays.copyOf(overflowCents, overflowSize * 2);
+        }
+        overflowDays[overflowSize] = day;
+        overflowKeys[overflowSize] = key;
+        overflowCents[overflowSize] = cents;
+        overflowSize++;
+    }
+    private void removeOverflow(int day, int key, long cents)
+    {
+        for (int i = 0; i < overflowSize; i++)
+        {
+            if (overflowDays[i] == day && overflowKeys[i] == key && overflowCents[i] == cents)
+            {
+                removeOverflowAt(i);
+                return;
+            }
+        }
+    }
+    private void removeOverflowAt(int i)
+    {
+        overflowSize--;
+        overflowDays[i] = overflowDays[overflowSize];
+        overflowKeys[i] = overflowKeys[overflowSize];
+        overflowCents[i] = overflowCents[overflowSize];
+    }
+    // Moves the overflow records that the grown span now covers into the trees
+    private void absorbOverflow()
+    {
+        for (int i = overflowSize - 1; i >= 0; i--)
+        {
+            int day = overflowDays[i];
+            if (day >= baseDay && day - baseDay < length)
+            {
+                addToTrees(day, overflowKeys[i], overflowCents[i], 1);
+                removeOverflowAt(i);
+            }
+        }
+    }
+    // Sum or count of the overflow records of the key, or of the type when key is -1, within [startDay, endDay]
+    private long overflowSum(int key, int type, int startDay, int endDay, boolean count)
+    {
+        long result = 0;
+        for (int i = 0; i < overflowSize; i++)
+        {
+            int day = overflowDays[i];
+            if (day >= startDay && day <= endDay
+                    && (key >= 0 ? overflowKeys[i] == key : overflowKeys[i] % TYPE_COUNT == type))
+            {
+                result += count ? 1 : overflowCents[i];
+            }
+        }
+        return result;
+    }
+    // Makes sure the day lies inside the tracked span, growing it by doubling
+    private boolean cover(int day)
+    {
+        if (length == 0)
+        {
+            baseDay = day - INITIAL_DAYS / 2;
+            length = INITIAL_DAYS;
+            return true;
+        }
+        if (day >= baseDay && day - baseDay < length)
+        {
+            return true;
+        }
+        long newBase = baseDay;
+        long newLength = length;
+        while (day < newBase)
+        {
+            newBase -= newLength;
+            newLength *= 2;
+        }
+        while (day >= newBase + newLength)
+        {
+            newLength *= 2;
+        }
+        if (newLength > MAX_DAYS)
+        {
+            return false;
+        }
+        int offset = (int) (baseDay - newBase);
+        resizeAll(sums, (int) newLength, offset);
+        resizeAll(counts, (int) newLength, offset);
+        resizeAll(typeSums, (int) newLength, offset);
+        resizeAll(typeCounts, (int) newLength, offset);
+        baseDay = (int) newBase;
+        length = (int) newLength;
+        absorbOverflow();
+        return true;
+    }
+    private FenwickTree tree(FenwickTree[] trees, int key)
+    {
+        if (trees[key] == null)
+        {
+            trees[key] = new FenwickTree(length);
+        }
+        return trees[key];
+    }
+    private long rangeSum(FenwickTree[] trees, int key, int startDay, int endDay)
+    {
+        if (key >= trees.length || trees[key] == null)
+        {
+            return 0;
+        }
+        long from = Math.max((long) startDay - baseDay, 0);
+        long to = Math.min((long) endDay - baseDay, length - 1);
+        return from > to ? 0 : trees[key].rangeSum((int) from, (int) to);
+    }
+    private static void resizeAll(FenwickTree[] trees, int newLength, int offset)
+    {
+        for (int i = 0; i < trees.length; i++)
+        {
+            if (trees[i] != null)
+            {
+                trees[i] = trees[i].resized(newLength, offset);
+            }
+        }
+    }
+    private static int key(int category, int type)
+    {
+        return category * TYPE_COUNT + type;
+    }
+}
@@ -0,0 +1,263 @@
+import java.util.Arrays;
+
+// Storage slots kept sorted by (epoch day, slot) so that date ranges are found by binary search.
+// Out-of-order inserts go to a small sorted pending run and removals only flag entries,
+// so a mutation never shifts the whole index; both are folded into the main run by merge().
+public class DateIndex
+{
+    private static final int MIN_PENDING = 1024;
+
+    private int[] days = new int[16];
+    private int[] slots = new int[16];
+    private boolean[] dead = new boolean[16];
+    private int size;
+    private int deadCount;
+
+    private int[] pendingDays = new int[16];
+    private int[] pendingSlots = new int[16];
+    private int pendingSize;
+    // While bulk inserting, the pending run is left unsorted until endBulkInsert()
+    private boolean bulkInsert;
+
+    public void insert(int day, int slot)
+    {
+        if (bulkInsert)
+        {
+            appendPending(day, slot);
+            return;
+        }
+        // Records usually arrive in date order, so most inserts are appends to the main run
+        if (size == 0 || compare(days[size - 1], slots[size - 1], day, slot) < 0)
+        {
+            if (size == days.length)
+            {
+                days = Arrays.copyOf(days, size * 2);
+                slots = Arrays.copyOf(slots, size * 2);
+                dead = Arrays.copyOf(dead, size * 2);
+            }
+            days[size] = day;
+            slots[size] = slot;
+            dead[size] = false;
+            size++;
+            return;
+        }
+        if (pendingSize == pendingDays.length)
+        {
+            pendingDays = Arrays.copyOf(pendingDays, pendingSize * 2);
+            pendingSlots = Arrays.copyOf(pendingSlots, pendingSize * 2);
+        }
+        int position = positionOf(pendingDays, pendingSlots, pendingSize, day, slot);
+        System.arraycopy(pendingDays, position, pendingDays, position + 1, pendingSize - position);
+        System.arraycopy(pendingSlots, position, pendingSlots, position + 1, pendingSize - position);
+        pendingDays[position] = day;
+        pendingSlots[position] = slot;
+        pendingSize++;
+        if (pendingSize > Math.max(MIN_PENDING, 4 * (int) Math.sqrt(size)))
+        {
+            merge();
+        }
+    }
+    // Starts a bulk load: inserts become plain appends and the index must not be queried until the end
+    public void beginBulkInsert()
+    {
+        bulkInsert = true;
+    }
+    // Sorts everything inserted since beginBulkInsert() once and merges it into the main run
+    public void endBulkInsert()
+    {
+        if (!bulkInsert)
+        {
+            return;
+        }
+        bulkInsert = false;
+        long[] keys = new long[pendingSize];
+        for (int i = 0; i < pendingSize; i++)
+        {
+            keys[i] = (long) pendingDays[i] << 32 | pendingSlots[i];
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < pendingSize; i++)
+        {
+            pendingDays[i] = (int) (keys[i] >> 32);
+            pendingSlots[i] = (int) keys[i];
+        }
+        // Inserts that all follow the main run are appended without rebuilding it
+        if (pendingSize > 0 && deadCount == 0
+                && (size == 0 || compare(days[size - 1], slots[size - 1], pendingDays[0], pendingSlots[0]) < 0))
+        {
+            if (size + pendingSize > days.length)
+            {
+                int newCapacity = Math.max(size + pendingSize, days.length + (days.length >> 1));
+                days = Arrays.copyOf(days, newCapacity);
+                slots = Arrays.copyOf(slots, newCapacity);
+                dead = Arrays.copyOf(dead, newCapacity);
+            }
+            System.arraycopy(pendingDays, 0, days, size, pendingSize);
+            System.arraycopy(pendingSlots, 0, slots, size, pendingSize);
+            Arrays.fill(dead, size, size + pendingSize, false);
+            size += pendingSize;
+            pendingSize = 0;
+            return;
+        }
+        merge();
+    }
+    public void remove(int day, int slot)
+    {
+        int position = positionOf(pendingDays, pendingSlots, pendingSize, day, slot);
+        if (position < pendingSize && pendingDays[position] == day && pendingSlots[position] == slot)
+        {
+            System.arraycopy(pendingDays, position + 1, pendingDays, position, pendingSize - position - 1);
+            System.arraycopy(pendingSlots, position + 1, pendingSlots, position, pendingSize - position - 1);
+            pendingSize--;
+            return;
+        }
+        position = positionOf(days, slots, size, day, slot);
+        if (position >= size || days[position] != day || slots[position] != slot || dead[position])
+        {
+            throw new IllegalStateException("Slot " + slot + " is not indexed");
+        }
+        dead[position] = true;
+        deadCount++;
+        if (deadCount >= MIN_PENDING && deadCount * 2 > size)
+        {
+            merge();
+        }
+    }
+    // Renumbers the slots after the storage was compacted; relative order is preserved
+    public void remap(int[] remap)
+    {
+        merge();
+        for (int i = 0; i < size; i++)
+        {
+            slots[i] = remap[slots[i]];
+        }
+    }
+    public void clear()
+    {
+        bulkInsert = false;
+        size = 0;
+        deadCount = 0;
+        pendingSize = 0;
+    }
+    // Number of indexed slots
+    public int size()
+    {
+        return size - deadCount + pendingSize;
+    }
+
+    // Slots of the records within [startDay, endDay] in (day, slot) order
+    public int[] slotsInRange(int startDay, int endDay)
+    {
+        int from = positionOf(days, slots, size, startDay, Integer.MIN_VALUE);
+        int to = endDay == Integer.MAX_VALUE ? size : positionOf(days, slots, size, endDay + 1, Integer.MIN_VALUE);
+        int pendingFrom = positionOf(pendingDays, pendingSlots, pendingSize, startDay, Integer.MIN_VALUE);
+        int pendingTo = endDay == Integer.MAX_VALUE
+                ? pendingSize
+                : positionOf(pendingDays, pendingSlots, pendingSize, endDay + 1, Integer.MIN_VALUE);
+
+        int[] result = new int[to - from + pendingTo - pendingFrom];
+        int count = 0;
+        while (from < to || pendingFrom < pendingTo)
+        {
+            if (from < to && dead[from])
+            {
+                from++;
+            }
+            else if (pendingFrom >= pendingTo
+                    || from < to && compare(days[from], slots[from], pendingDays[pendingFrom], pendingSlots[pendingFrom]) < 0)
+            {
+                result[count++] = slots[from++];
+            }
+            else
+            {
+                result[count++] = pendingSlots[pendingFrom++];
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+    // Upper bound of slotsInRange(startDay, endDay).length found by binary search alone; removed entries
+    // not yet merged away are still counted
+    public int estimateInRange(int startDay, int endDay)
+    {
+        int from = positionOf(days, slots, size, startDay, Integer.MIN_VALUE);
+        int to = endDay == Integer.MAX_VALUE ? size : positionOf(days, slots, size, endDay + 1, Integer.MIN_VALUE);
+        int pendingFrom = positionOf(pendingDays, pendingSlots, pendingSize, startDay, Integer.MIN_VALUE);
+        int pendingTo = endDay == Integer.MAX_VALUE
+                ? pendingSize
+                : positionOf(pendingDays, pendingSlots, pendingSize, endDay + 1, Integer.MIN_VALUE);
+        return to - from + pendingTo - pendingFrom;
+    }
+    public int[] allSlots()
+    {
+        return slotsInRange(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    private void appendPending(int day, int slot)
+    {
+        if (pendingSize == pendingDays.length)
+        {
+            pendingDays = Arrays.copyOf(pendingDays, pendingSize * 2);
+            pendingSlots = Arrays.copyOf(pendingSlots, pendingSize * 2);
+        }
+        pendingDays[pendingSize] = day;
+        pendingSlots[pendingSize] = slot;
+        pendingSize++;
+    }
+    // Folds the pending run into the main run and drops the removed entries
+    private void merge()
+    {
+        int newSize = size - deadCount + pendingSize;
+        int[] newDays = new int[Math.max(16, newSize + (newSize >> 1))];
+        int[] newSlots = new int[newDays.length];
+        int count = 0;
+        int main = 0;
+        int pending = 0;
+        while (main < size || pending < pendingSize)
+        {
+            if (main < size && dead[main])
+            {
+                main++;
+            }
+            else if (pending >= pendingSize
+                    || main < size && compare(days[main], slots[main], pendingDays[pending], pendingSlots[pending]) < 0)
+            {
+                newDays[count] = days[main];
+                newSlots[count++] = slots[main++];
+            }
+            else
+            {
+                newDays[count] = pendingDays[pending];
+                newSlots[count++] = pendingSlots[pending++];
+            }
+        }
+        days = newDays;
+        slots = newSlots;
+        dead = new boolean[newDays.length];
+        size = count;
+        deadCount = 0;
+        pendingSize = 0;
+    }
+    private static int positionOf(int[] days, int[] slots, int size, int day, int slot)
+    {
+        int low = 0;
+        int high = size;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (compare(days[middle], slots[middle], day, slot) < 0)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    private static int compare(int day1, int slot1, int day2, int slot2)
+    {
+        int result = Integer.compare(day1, day2);
+        return result != 0 ? result : Integer.compare(slot1, slot2);
+    }
+}
@@ -0,0 +1,60 @@
+// Binary indexed tree: point updates and prefix sums over a dense index range in O(log n)
+public class FenwickTree
+{
+    private final long[] tree;
+
+    public FenwickTree(int size)
+    {
+        this.tree = new long[size + 1];
+    }
+
+    public int size()
+    {
+        return tree.length - 1;
+    }
+    public void add(int index, long delta)
+    {
+        for (int i = index + 1; i < tree.length; i += i & -i)
+        {
+            tree[i] += delta;
+        }
+    }
+    // Sum of the values in [0, index]
+    public long prefixSum(int index)
+    {
+        long sum = 0;
+        for (int i = Math.min(index + 1, tree.length - 1); i > 0; i -= i & -i)
+        {
+            sum += tree[i];
+        }
+        return sum;
+    }
+    // Sum of the values in [from, to], clamped to the tree bounds
+    public long rangeSum(int from, int to)
+    {
+        if (to < 0 || from > to)
+        {
+            return 0;
+        }
+        return prefixSum(to) - (from > 0 ? prefixSum(from - 1) : 0);
+    }
+    // Copies the values into a tree of the new size, moving every index right by the offset
+    public FenwickTree resized(int newSize, int offset)
+    {
+        FenwickTree result = new FenwickTree(newSize);
+        for (int index = 0; index < size(); index++)
+        {
+            result.tree[index + offset + 1] = rangeSum(index, index);
+        }
+        // Linear-time construction from the point values
+        for (int i = 1; i < result.tree.length; i++)
+        {
+            int parent = i + (i & -i);
+            if (parent < result.tree.length)
+            {
+                result.tree[parent] += result.tree[i];
+            }
+        }
+        return result;
+    }
+}
@@ -1,31 +1,60 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntPredicate;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
 
 public class FileHandler
 {
+    private static final long MIN_CHUNK_SIZE = 4L << 20;
+    private static final long MAX_CHUNK_SIZE = 256L << 20;
+    private static final int EXPORT_BUFFER_SIZE = 1 << 16;
+    private static final int EXPORT_CHUNK_ROWS = 1 << 16;
+    private static final long IMPORT_BLOCK_SIZE = 1L << 20;
+
+    // Receives the parse error counts per file, or null
+    private TrackerMetrics metrics;
+
+    public void setMetrics(TrackerMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
     public void saveToFile(List<FinancialRecord> records, String fileName)
     {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName)))
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
         {
             // Writing down the title (optional)
-            writer.write("id,type,category,amount,date");
-            writer.newLine();
+            CategoryDictionary dictionary = new CategoryDictionary();
+            CsvRecordWriter writer = new CsvRecordWriter(dictionary, EXPORT_BUFFER_SIZE);
+            writer.writeTitle();
 
             // We record every record
             for (FinancialRecord record : records)
             {
-                String formattedAmount = String.format("%.2f", record.getAmount()).replace(',', '.');
-                String line = String.format("%d,%s,%s,%s,%s",
-                        record.getId(),
-                        record.getType(),
-                        record.getCategory(),
-                        formattedAmount,
-                        record.getDate());
-                writer.write(line);
-                writer.newLine();
+                writer.write(record.getId(), record.getType().ordinal(), dictionary.idOf(record.getCategory()),
+                        record.getCents(), (int) record.getDate().toEpochDay());
+                if (writer.size() >= EXPORT_BUFFER_SIZE)
+                {
+                    writer.writeTo(channel);
+                }
             }
+            writer.writeTo(channel);
             System.out.println("The data has been successfully saved to a file: " + fileName);
         }
         catch (IOException e)
@@ -33,81 +62,371 @@ public class FileHandler
             System.out.println("Error when saving to a file: " + e.getMessage());
         }
     }
+    // Writes every live record of the store in storage order and returns their number, or -1 if the file
+    // could not be written; the same goes for the other saveToFile and loadFromFile methods returning a count
+    public int saveToFile(RecordStore records, String fileName)
+    {
+        return export(records, null, slot -> true, fileName);
+    }
+    // Writes the given slots of the store in the given order, for example a date range from the date index
+    public int saveToFile(RecordStore records, int[] slots, String fileName)
+    {
+        return export(records, slots, slot -> true, fileName);
+    }
+    // Writes the live records of the store that pass the filter, in storage order
+    public int saveToFile(RecordStore records, IntPredicate filter, String fileName)
+    {
+        return export(records, null, filter, fileName);
+    }
 
     // Loads a list of finance records from a CSV file
     public List<FinancialRecord> loadFromFile(String fileName)
     {
         List<FinancialRecord> records = new ArrayList<>();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileName)))
+        CategoryDictionary dictionary = new CategoryDictionary();
+        loadFromFile(fileName, dictionary, (id, type, categoryId, cents, epochDay) ->
+                records.add(FinancialRecord.ofCents(id, type, dictionary.nameOf(categoryId),
+                        cents, LocalDate.ofEpochDay(epochDay))));
+        return records;
+    }
+    // Streams the records of a CSV file into the sink, interning categories through the dictionary
+    public int loadFromFile(String fileName, CategoryDictionary dictionary, RecordSink sink)
+    {
+        int count = -1;
+        try (InputStream input = new FileInputStream(fileName))
+        {
+            CsvRecordParser parser = new CsvRecordParser(dictionary);
+            int[] errors = new int[1];
+            parser.setErrorListener(message ->
+            {
+                System.out.println(message);
+                errors[0]++;
+            });
+            count = parser.parse(input, sink);
+            recordParseErrors(fileName, errors[0]);
+            System.out.println("The data was successfully uploaded from a file: " + fileName);
+            System.out.println("Uploaded records: " + count);
+        }
+        catch (FileNotFoundException e)
+        {
+            System.err.println("File not found: " + fileName);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error reading the file: " + e.getMessage());
+        }
+        return count;
+    }
+    // Same as loadFromFile without the progress messages, passing the number of bytes read so far to progress.
+    // Parse errors are still printed, since they concern single lines rather than the whole load.
+    public int readRecords(Path path, CategoryDictionary dictionary, RecordSink sink, LongConsumer progress)
+            throws IOException
+    {
+        try (InputStream input = new FilterInputStream(new FileInputStream(path.toFile()))
         {
-            String line;
-            boolean isFirstLine = true;
+            private long read;
 
-            while ((line = reader.readLine()) != null)
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException
             {
-                // Skipping the title
-                if (isFirstLine)
-                {
-                    isFirstLine = false;
-                    continue;
-                }
-                if (line.trim().isEmpty())
+                int count = super.read(buffer, offset, length);
+                if (count > 0)
                 {
-                    continue;
+                    read += count;
+                    progress.accept(read);
                 }
-                try
+                return count;
+            }
+        })
+        {
+            CsvRecordParser parser = new CsvRecordParser(dictionary);
+            int[] errors = new int[1];
+            parser.setErrorListener(message ->
+            {
+                System.out.println(message);
+                errors[0]++;
+            });
+            int count = parser.parse(input, sink);
+            recordParseErrors(path.toString(), errors[0]);
+            return count;
+        }
+    }
+    // Cuts the CSV file into blocks of about a megabyte that end at a line break and parses only the blocks
+    // whose content fingerprint is not in known, so that re-reading a grown export costs about the size of
+    // what changed. Returns the fingerprints of all blocks in file order.
+    public long[] loadChangedBlocks(Path path, Set<Long> known, CategoryDictionary dictionary, RecordSink sink)
+            throws IOException
+    {
+        List<Long> fingerprints = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            CsvRecordParser parser = new CsvRecordParser(dictionary);
+            int[] errors = new int[1];
+            parser.setErrorListener(message ->
+            {
+                System.out.println(message);
+                errors[0]++;
+            });
+            long size = channel.size();
+            for (long start = 0; start < size; )
+            {
+                long end = size - start <= IMPORT_BLOCK_SIZE ? size
+                        : nextLineStart(channel, start + IMPORT_BLOCK_SIZE, size);
+                ByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                long fingerprint = fingerprint(block);
+                fingerprints.add(fingerprint);
+                if (!known.contains(fingerprint))
                 {
-                    FinancialRecord record = parseLine(line);
-                    if (record != null)
-                    {
-                        records.add(record);
-                    }
+                    parser.setSkipTitle(start == 0);
+                    parser.parse(block, sink);
                 }
-                catch (Exception e)
+                start = end;
+            }
+            recordParseErrors(path.toString(), errors[0]);
+        }
+        return fingerprints.stream().mapToLong(Long::longValue).toArray();
+    }
+    // Same as saveToFile(RecordStore, String) without the progress messages, passing the number of records
+    // written so far to progress after every chunk; an exception thrown by progress stops the export
+    public int writeRecords(RecordStore records, Path path, LongConsumer progress) throws IOException
+    {
+        try
+        {
+            return write(records, null, slot -> true, path, progress);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException(e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Saving was interrupted: " + path);
+        }
+    }
+    // Loads a large CSV file by memory-mapping newline-aligned chunks and parsing them in parallel.
+    // Records reach the sink in file order and parse errors are reported in file order as well.
+    public int loadFromFileParallel(String fileName, CategoryDictionary dictionary, RecordSink sink)
+    {
+        int count = -1;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+        {
+            long[] bounds = splitIntoChunks(channel);
+            List<ForkJoinTask<RecordBatch>> tasks = new ArrayList<>();
+            List<List<String>> errors = new ArrayList<>();
+            for (int chunk = 0; chunk + 1 < bounds.length; chunk++)
+            {
+                long start = bounds[chunk];
+                long length = bounds[chunk + 1] - start;
+                boolean firstChunk = chunk == 0;
+                List<String> chunkErrors = new ArrayList<>();
+                errors.add(chunkErrors);
+                tasks.add(ForkJoinPool.commonPool().submit(() ->
                 {
-                    System.out.println("Error parsing a string: " +  line + " - " + e.getMessage());
-                }
+                    RecordBatch batch = new RecordBatch();
+                    CsvRecordParser parser = new CsvRecordParser(batch.getDictionary());
+                    parser.setSkipTitle(firstChunk);
+                    parser.setErrorListener(chunkErrors::add);
+                    parser.parse(channel.map(FileChannel.MapMode.READ_ONLY, start, length), batch);
+                    return batch;
+                }));
             }
+            // Chunks are merged in order while later ones are still being parsed
+            int errorCount = 0;
+            int loaded = 0;
+            for (int chunk = 0; chunk < tasks.size(); chunk++)
+            {
+                RecordBatch batch = tasks.get(chunk).get();
+                errors.get(chunk).forEach(System.out::println);
+                errorCount += errors.get(chunk).size();
+                batch.forEach(dictionary, sink);
+                loaded += batch.size();
+            }
+            count = loaded;
+            recordParseErrors(fileName, errorCount);
             System.out.println("The data was successfully uploaded from a file: " + fileName);
-            System.out.println("Uploaded records: " + records.size());
+            System.out.println("Uploaded records: " + count);
         }
-        catch (FileNotFoundException e)
+        catch (NoSuchFileException e)
         {
             System.err.println("File not found: " + fileName);
         }
-        catch (IOException e)
+        catch (IOException | ExecutionException e)
         {
             System.err.println("Error reading the file: " + e.getMessage());
         }
-        return records;
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            System.err.println("Loading was interrupted: " + fileName);
+        }
+        return count;
     }
-    // Parses a CSV string and creates a FinanceRecord object
-    private FinancialRecord parseLine(String line)
+    private void recordParseErrors(String fileName, int count)
     {
+        if (metrics != null)
+        {
+            metrics.recordParseErrors(fileName, count);
+        }
+    }
+    // Formats the records straight from the store's columns. A large export is cut into chunks of rows
+    // that are formatted in parallel and written in order, with only a few chunks in memory at a time.
+    private int export(RecordStore records, int[] slots, IntPredicate filter, String fileName)
+    {
+        int count = -1;
         try
         {
-            String[] parts = line.split(",");
+            count = write(records, slots, filter, Paths.get(fileName), rows -> { });
+            System.out.println("The data has been successfully saved to a file: " + fileName);
+        }
+        catch (IOException | ExecutionException e)
+        {
+            System.out.println("Error when saving to a file: " + e.getMessage());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            System.out.println("Saving was interrupted: " + fileName);
+        }
+        return count;
+    }
+    private int write(RecordStore records, int[] slots, IntPredicate filter, Path path, LongConsumer progress)
+            throws IOException, ExecutionException, InterruptedException
+    {
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            int rows = slots != null ? slots.length : records.slotCount();
+            CsvRecordWriter title = new CsvRecordWriter(records.getDictionary(), 64);
+            title.writeTitle();
+            title.writeTo(channel);
 
-            if (parts.length != 5)
+            int chunks = (rows + EXPORT_CHUNK_ROWS - 1) / EXPORT_CHUNK_ROWS;
+            if (chunks <= 1)
             {
-                throw new IllegalArgumentException("Incorrect number of fields in a row: " + parts.length);
+                count = formatChunk(records, slots, filter, 0, rows, channel, progress);
             }
+            else
+            {
+                int window = ForkJoinPool.commonPool().getParallelism() * 2;
+                ArrayDeque<ForkJoinTask<CsvRecordWriter>> inFlight = new ArrayDeque<>();
+                int[] counts = new int[chunks];
+                int submitted = 0;
+                for (int chunk = 0; chunk < chunks; chunk++)
+                {
+                    while (submitted < chunks && inFlight.size() < window)
+                    {
+                        int index = submitted++;
+                        int from = index * EXPORT_CHUNK_ROWS;
+                        int to = Math.min(rows, from + EXPORT_CHUNK_ROWS);
+                        inFlight.add(ForkJoinPool.commonPool().submit(() ->
+                        {
+                            CsvRecordWriter writer = new CsvRecordWriter(records.getDictionary(),
+                                    EXPORT_CHUNK_ROWS * 48);
+                            counts[index] = format(records, slots, filter, from, to, writer);
+                            return writer;
+                        }));
+                    }
+                    inFlight.poll().get().writeTo(channel);
+                    count += counts[chunk];
+                    progress.accept(count);
+                }
+            }
+        }
+        return count;
+    }
+    // Formats rows [from, to) on the calling thread, flushing the buffer whenever it fills up
+    private int formatChunk(RecordStore records, int[] slots, IntPredicate filter, int from, int to,
+                            FileChannel channel, LongConsumer progress) throws IOException
+    {
+        CsvRecordWriter writer = new CsvRecordWriter(records.getDictionary(), EXPORT_BUFFER_SIZE);
+        int count = 0;
+        for (int start = from; start < to; start += EXPORT_BUFFER_SIZE / 64)
+        {
+            count += format(records, slots, filter, start, Math.min(to, start + EXPORT_BUFFER_SIZE / 64), writer);
+            writer.writeTo(channel);
+            progress.accept(count);
+        }
+        return count;
+    }
+    private static int format(RecordStore records, int[] slots, IntPredicate filter, int from, int to,
+                              CsvRecordWriter writer)
+    {
+        int count = 0;
+        for (int row = from; row < to; row++)
+        {
+            int slot = slots != null ? slots[row] : row;
+            if (!records.isDeleted(slot) && filter.test(slot))
+            {
+                writer.write(records, slot);
+                count++;
+            }
+        }
+        return count;
+    }
+    // Two independent 32-bit checksums, so that an unchanged fingerprint is practically an unchanged block
+    private static long fingerprint(ByteBuffer block)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(block.duplicate());
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(block.duplicate());
+        return crc.getValue() << 32 | crc32c.getValue();
+    }
+    // Returns chunk boundaries; every boundary except the first is the start of a line
+    private long[] splitIntoChunks(FileChannel channel) throws IOException
+    {
+        long size = channel.size();
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        long chunks = Math.max(parallelism * 4L, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        chunks = Math.max(1, Math.min(chunks, size / MIN_CHUNK_SIZE));
 
-            int id = Integer.parseInt(parts[0].trim());
-            OperationType type = OperationType.valueOf(parts[1].trim());
-            String category = parts[2].trim();
-
-            String amountStr = parts[3].trim().replace(",", ".");
-            double amount = Double.parseDouble(amountStr);
-            LocalDate date = LocalDate.parse(parts[4].trim());
-
-            return new FinancialRecord(id, type, category, amount, date);
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        for (long chunk = 1; chunk < chunks; chunk++)
+        {
+            long start = nextLineStart(channel, size * chunk / chunks, size);
+            if (start > bounds.get(bounds.size() - 1) && start < size)
+            {
+                bounds.add(start);
+            }
         }
-        catch (Exception e)
+        bounds.add(size);
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+    private long nextLineStart(FileChannel channel, long position, long size) throws IOException
+    {
+        ByteBuffer window = ByteBuffer.allocate(8192);
+        while (position < size)
         {
-            System.out.println("Error parsing a string: " + line + " - " + e.getMessage());
-            return null;
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0)
+            {
+                break;
+            }
+            for (int i = 0; i < read; i++)
+            {
+                byte b = window.get(i);
+                if (b == '\n')
+                {
+                    return position + i + 1;
+                }
+                if (b == '\r')
+                {
+                    // Keep a "\r\n" pair together
+                    if (i + 1 < read)
+                    {
+                        return window.get(i + 1) == '\n' ? position + i + 2 : position + i + 1;
+                    }
+                    ByteBuffer next = ByteBuffer.allocate(1);
+                    boolean lineFeed = channel.read(next, position + i + 1) == 1 && next.get(0) == '\n';
+                    return position + i + (lineFeed ? 2 : 1);
+                }
+            }
+            position += read;
         }
+        return size;
     }
-}
\ No newline at end of file
+}
@@ -1,22 +1,57 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 public class FinanceTracker
 {
-    private List<FinancialRecord> records = new ArrayList<>();
-    private Map<String, OperationType> categories = new HashMap<>();
+    private RecordStore records = new RecordStore();
+    private DateIndex dateIndex = new DateIndex();
+    private DailyRollup rollup = new DailyRollup();
+    private PostingIndex postings = new PostingIndex();
+    private RunningTotals totals = new RunningTotals();
+    private CategoryRegistry categories = new CategoryRegistry(records.getDictionary());
+    private BudgetMonitor budgets = new BudgetMonitor(records.getDictionary());
+    private QueryEngine queryEngine = new QueryEngine(records, dateIndex, postings, categories);
+    private TrendEngine trendEngine = new TrendEngine(records, dateIndex);
+    private StatisticsCache statisticsCache = new StatisticsCache(StatisticsCache.DEFAULT_CAPACITY);
+    // Date range of the batch being added by addRecords, for one cache invalidation at its end
+    private boolean batching;
+    private int batchMinDay;
+    private int batchMaxDay;
+    private TrackerMetrics metrics = new TrackerMetrics(() -> records.size());
+    // Splits large aggregations across a pool when set; null keeps them on the calling thread
+    private ParallelAggregator parallelAggregator;
 
     // Default constructor
     public FinanceTracker()
     {
-        this.records = new ArrayList<>();
-        this.categories = new HashMap<>();
+        this.records = new RecordStore();
+        this.dateIndex = new DateIndex();
+        this.rollup = new DailyRollup();
+        this.postings = new PostingIndex();
+        this.totals = new RunningTotals();
+        this.categories = new CategoryRegistry(records.getDictionary());
+        this.budgets = new BudgetMonitor(records.getDictionary());
+        this.queryEngine = new QueryEngine(records, dateIndex, postings, categories);
+        this.trendEngine = new TrendEngine(records, dateIndex);
+        this.statisticsCache = new StatisticsCache(StatisticsCache.DEFAULT_CAPACITY);
+        this.metrics = new TrackerMetrics(() -> records.size());
+        this.fileHandler.setMetrics(metrics);
         initializeDefaultCategories();
     }
     // Initialize of standard categories
@@ -40,16 +75,81 @@ public class FinanceTracker
     }
     public void addRecord(FinancialRecord record)
     {
-        if (record != null)
+        metrics.time(TrackerMetrics.Operation.ADD_RECORD, () ->
         {
-            records.add(record);
+            if (record != null)
+            {
+                int slot = records.add(record);
+                indexRecord(slot);
 
-            // Automatically add a category if it doesn't exist yet
-            if (!categories.containsKey(record.getCategory()))
+                // Automatically add a category if it doesn't exist yet
+                categories.registerIfAbsent(records.getCategoryId(slot), record.getType());
+                if (journal != null)
+                {
+                    journal.logAdd(record.getId(), record.getType(), record.getCategory(),
+                            records.getCents(slot), records.getEpochDay(slot));
+                    checkpointIfNeeded();
+                }
+            }
+        });
+    }
+    // Adds every record of the batch in batch order, or none of them if the batch breaks a category's type.
+    // Records added to the batch without an id get a contiguous range of new ids.
+    public void addRecords(RecordBatch batch)
+    {
+        metrics.time(TrackerMetrics.Operation.ADD_RECORDS, () ->
+        {
+            // One pass in batch order applies the same checks as adding the records one by one
+            CategoryDictionary batchCategories = batch.getDictionary();
+            OperationType[] categoryTypes = new OperationType[batchCategories.size()];
+            for (int id = 0; id < categoryTypes.length; id++)
             {
-                categories.put(record.getCategory(), record.getType());
+                categoryTypes[id] = categories.get(batchCategories.nameOf(id));
             }
-        }
+            for (int i = 0; i < batch.size(); i++)
+            {
+                int category = batch.getCategoryId(i);
+                OperationType type = batch.getType(i);
+                if (categoryTypes[category] == null)
+                {
+                    categoryTypes[category] = type;
+                }
+                else if (categoryTypes[category] != type && !batch.hasId(i))
+                {
+                    throw new IllegalArgumentException(
+                            String.format("The category '%s' must be of type '%s'",
+                            batchCategories.nameOf(category), categoryTypes[category].getRussianName()));
+                }
+            }
+
+            records.reserve(batch.size());
+            // Sorting a large batch into the date index once beats inserting it record by record
+            boolean bulk = batch.size() >= MIN_BULK_INSERT && (long) batch.size() * batch.size() >= dateIndex.size();
+            if (bulk)
+            {
+                dateIndex.beginBulkInsert();
+            }
+            // The cached statistics are invalidated once for the batch's date range instead of per record
+            batching = true;
+            batchMinDay = Integer.MAX_VALUE;
+            batchMaxDay = Integer.MIN_VALUE;
+            try
+            {
+                batch.forEach(records.getDictionary(), generateNextId(), this::addLoadedRecord);
+            }
+            finally
+            {
+                if (bulk)
+                {
+                    dateIndex.endBulkInsert();
+                }
+                batching = false;
+                if (batchMinDay <= batchMaxDay)
+                {
+                    statisticsCache.invalidate(batchMinDay, batchMaxDay);
+                }
+            }
+        });
     }
     // Creates and adds a new record with category validation
     public boolean addRecord(OperationType type, String category, double amount, LocalDate date)
@@ -75,60 +175,260 @@ public class FinanceTracker
     // Returns the entire history of operations
     public List<FinancialRecord> getAllRecords()
     {
-        return new ArrayList<>(records);
+        return metrics.time(TrackerMetrics.Operation.GET_ALL_RECORDS, () ->
+        {
+            List<FinancialRecord> result = new ArrayList<>(records.size());
+            for (int slot = 0; slot < records.slotCount(); slot++)
+            {
+                if (!records.isDeleted(slot))
+                {
+                    result.add(records.getRecord(slot));
+                }
+            }
+            return result;
+        });
+    }
+    // Passes every record to the action in storage order without collecting them in a list
+    public void forEachRecord(Consumer<FinancialRecord> action)
+    {
+        for (int slot = 0; slot < records.slotCount(); slot++)
+        {
+            if (!records.isDeleted(slot))
+            {
+                action.accept(records.getRecord(slot));
+            }
+        }
     }
     // Returns records sorted by date(new ones first)
     public List<FinancialRecord> getAllRecordsSortedByDate()
     {
-        return records.stream()
-                .sorted(Comparator.comparing(FinancialRecord::getDate).reversed())
-                .collect(Collectors.toList());
+        return metrics.time(TrackerMetrics.Operation.GET_ALL_RECORDS_SORTED_BY_DATE, () ->
+        {
+            // Walk the date index backwards one day at a time, keeping insertion order within a day
+            int[] slots = dateIndex.allSlots();
+            List<FinancialRecord> result = new ArrayList<>(slots.length);
+            int end = slots.length;
+            while (end > 0)
+            {
+                int day = records.getEpochDay(slots[end - 1]);
+                int start = end - 1;
+                while (start > 0 && records.getEpochDay(slots[start - 1]) == day)
+                {
+                    start--;
+                }
+                for (int position = start; position < end; position++)
+                {
+                    result.add(records.getRecord(slots[position]));
+                }
+                end = start;
+            }
+            return result;
+        });
     }
     // Calculates the total balance
     public double getTotalBalance()
     {
-        return records.stream().mapToDouble(record ->
-                record.getType() == OperationType.INCOME ? record.getAmount() : -record.getAmount()).sum();
+        return Money.toAmount(getTotalBalanceCents());
+    }
+    // The exact total balance in minor units
+    public long getTotalBalanceCents()
+    {
+        return getTotalIncomeCents() - getTotalExpensesCents();
     }
     // Returns operations for a specific period
     public List<FinancialRecord> getRecordsByDateRange(LocalDate start, LocalDate end)
     {
-        validateDateRange(start, end);
-        return records.stream()
-                .filter(record -> isDateInRange(record.getDate(), start, end))
-                .collect(Collectors.toList());
+        return metrics.time(TrackerMetrics.Operation.GET_RECORDS_BY_DATE_RANGE, () ->
+        {
+            validateDateRange(start, end);
+            return toRecords(dateIndex.slotsInRange((int) start.toEpochDay(), (int) end.toEpochDay()));
+        });
     }
     // Returns statistics for a specific period
+    @SuppressWarnings("unchecked")
     public Map<String, Double> getStatisticsByCategory(LocalDate start, LocalDate end)
     {
-        validateDateRange(start, end);
-        return records.stream()
-                .filter(record -> isDateInRange(record.getDate(), start, end))
-                .collect(Collectors.groupingBy(FinancialRecord::getCategory,
-                        Collectors.summingDouble(FinancialRecord::getAmount)));
+        return metrics.time(TrackerMetrics.Operation.GET_STATISTICS_BY_CATEGORY, () ->
+        {
+            validateDateRange(start, end);
+            int startDay = (int) start.toEpochDay();
+            int endDay = (int) end.toEpochDay();
+            Map<String, Double> cached = (Map<String, Double>) statisticsCache.get(
+                    StatisticsCache.Kind.CATEGORY, startDay, endDay);
+            if (cached != null)
+            {
+                return new HashMap<>(cached);
+            }
+            CategoryDictionary dictionary = records.getDictionary();
+            long[] sums = new long[dictionary.size()];
+            long[] counts = new long[dictionary.size()];
+            collectByCategory(startDay, endDay, sums, counts);
+
+            Map<String, Double> statistics = new HashMap<>();
+            for (int id = 0; id < sums.length; id++)
+            {
+                if (counts[id] > 0)
+                {
+                    statistics.put(dictionary.nameOf(id), Money.toAmount(sums[id]));
+                }
+            }
+            statisticsCache.put(StatisticsCache.Kind.CATEGORY, startDay, endDay, new HashMap<>(statistics));
+            return statistics;
+        });
     }
     // Returns detailed statistics on the types of operations for the period
+    @SuppressWarnings("unchecked")
     public Map<OperationType, Double> getStatisticsByType(LocalDate start, LocalDate end)
     {
-        validateDateRange(start, end);
-        return records.stream()
-                .filter(record -> isDateInRange(record.getDate(), start, end))
-                .collect(Collectors.groupingBy(FinancialRecord::getType,
-                        Collectors.summingDouble(FinancialRecord::getAmount)));
+        return metrics.time(TrackerMetrics.Operation.GET_STATISTICS_BY_TYPE, () ->
+        {
+            validateDateRange(start, end);
+            int startDay = (int) start.toEpochDay();
+            int endDay = (int) end.toEpochDay();
+            Map<OperationType, Double> cached = (Map<OperationType, Double>) statisticsCache.get(
+                    StatisticsCache.Kind.TYPE, startDay, endDay);
+            if (cached != null)
+            {
+                return new EnumMap<>(cached);
+            }
+            OperationType[] types = OperationType.values();
+            long[] sums = new long[types.length];
+            long[] counts = new long[types.length];
+            collectByType(startDay, endDay, sums, counts);
+
+            Map<OperationType, Double> statistics = new EnumMap<>(OperationType.class);
+            for (OperationType type : types)
+            {
+                if (counts[type.ordinal()] > 0)
+                {
+                    statistics.put(type, Money.toAmount(sums[type.ordinal()]));
+                }
+            }
+            statisticsCache.put(StatisticsCache.Kind.TYPE, startDay, endDay, new EnumMap<>(statistics));
+            return statistics;
+        });
+    }
+    // Calculates the balance for a specific period
+    public double getBalance(LocalDate start, LocalDate end)
+    {
+        return metrics.time(TrackerMetrics.Operation.GET_BALANCE, () ->
+        {
+            validateDateRange(start, end);
+            int startDay = (int) start.toEpochDay();
+            int endDay = (int) end.toEpochDay();
+            Double cached = (Double) statisticsCache.get(StatisticsCache.Kind.BALANCE, startDay, endDay);
+            if (cached != null)
+            {
+                return cached;
+            }
+            long[] sums = new long[OperationType.values().length];
+            long[] counts = new long[sums.length];
+            collectByType(startDay, endDay, sums, counts);
+            double balance = Money.toAmount(
+                    sums[OperationType.INCOME.ordinal()] - sums[OperationType.EXPENSE.ordinal()]);
+            statisticsCache.put(StatisticsCache.Kind.BALANCE, startDay, endDay, balance);
+            return balance;
+        });
+    }
+    // Income, expenses, balance and sums per category of every day, week or month of the period,
+    // computed in one pass instead of one statistics query per bucket
+    public TrendSeries getTrends(LocalDate start, LocalDate end, TrendSeries.Bucket bucket)
+    {
+        return metrics.time(TrackerMetrics.Operation.GET_TRENDS, () ->
+        {
+            validateDateRange(start, end);
+            int startDay = (int) start.toEpochDay();
+            long[] sums = new long[OperationType.values().length];
+            long[] counts = new long[sums.length];
+            if (startDay > Integer.MIN_VALUE)
+            {
+                collectByType(Integer.MIN_VALUE, startDay - 1, sums, counts);
+            }
+            long openingBalance = sums[OperationType.INCOME.ordinal()] - sums[OperationType.EXPENSE.ordinal()];
+            return trendEngine.run(start, end, bucket, openingBalance);
+        });
     }
     // Get entries by category
     public List<FinancialRecord> getRecordsByCategory(String category)
     {
-        return records.stream()
-                .filter(record -> record.getCategory().equalsIgnoreCase(category))
-                .collect(Collectors.toList());
+        return metrics.time(TrackerMetrics.Operation.GET_RECORDS_BY_CATEGORY, () ->
+        {
+            return toRecords(postings.categories(categories.matchIgnoreCase(category)).toArray());
+        });
     }
     // Get records by operation type
     public List<FinancialRecord> getRecordsByType(OperationType type)
     {
-        return records.stream()
-                .filter(record -> record.getType() == type)
-                .collect(Collectors.toList());
+        return metrics.time(TrackerMetrics.Operation.GET_RECORDS_BY_TYPE, () ->
+        {
+            return toRecords(postings.type(type.ordinal()).toArray());
+        });
+    }
+    // Records matching every given filter, where a null filter matches everything: the category
+    // (case-insensitive), the type and the period from start to end. Records come in date order
+    // when a period is given and in storage order otherwise.
+    public List<FinancialRecord> getRecords(String category, OperationType type, LocalDate start, LocalDate end)
+    {
+        return metrics.time(TrackerMetrics.Operation.GET_RECORDS, () ->
+        {
+            SlotBitmap candidates = category == null ? null : postings.categories(categories.matchIgnoreCase(category));
+            if (type != null)
+            {
+                SlotBitmap typeSlots = postings.type(type.ordinal());
+                candidates = candidates == null ? typeSlots : SlotBitmap.and(candidates, typeSlots);
+            }
+            if (start == null && end == null)
+            {
+                return candidates == null ? getAllRecords() : toRecords(candidates.toArray());
+            }
+            validateDateRange(start, end);
+            int startDay = (int) start.toEpochDay();
+            int endDay = (int) end.toEpochDay();
+            if (candidates == null)
+            {
+                return toRecords(dateIndex.slotsInRange(startDay, endDay));
+            }
+            // Drive the intersection from the smaller side
+            if (dateIndex.estimateInRange(startDay, endDay) <= candidates.cardinality())
+            {
+                int[] slots = dateIndex.slotsInRange(startDay, endDay);
+                int count = 0;
+                for (int slot : slots)
+                {
+                    if (candidates.contains(slot))
+                    {
+                        slots[count++] = slot;
+                    }
+                }
+                return toRecords(Arrays.copyOf(slots, count));
+            }
+            int[] slots = candidates.toArray();
+            long[] keys = new long[slots.length];
+            int count = 0;
+            for (int slot : slots)
+            {
+                int day = records.getEpochDay(slot);
+                if (day >= startDay && day <= endDay)
+                {
+                    // Same (day, slot) order as the date index
+                    keys[count++] = (long) day << 32 | slot;
+                }
+            }
+            Arrays.sort(keys, 0, count);
+            for (int i = 0; i < count; i++)
+            {
+                slots[i] = (int) keys[i];
+            }
+            return toRecords(Arrays.copyOf(slots, count));
+        });
+    }
+    // Runs an ad-hoc aggregation: filters, group-by keys, and sum, count, min, max and average per group
+    public QueryResult query(RecordQuery query)
+    {
+        return metrics.time(TrackerMetrics.Operation.QUERY, () ->
+        {
+            return queryEngine.run(query);
+        });
     }
     // Get all categories of a certain type
     public Set<String> getCategoriesByType(OperationType type)
@@ -146,30 +446,254 @@ public class FinanceTracker
             throw new IllegalArgumentException("The category name cannot be empty");
         }
         categories.put(category.trim(), type);
+        if (journal != null)
+        {
+            journal.logAddCategory(category.trim(), type);
+            checkpointIfNeeded();
+        }
+    }
+    // Sets the monthly budget of an expense category; 0 removes it. Spending is checked against it
+    // on every change of the category's expenses, and crossing a threshold alerts the budget listeners.
+    public void setBudget(String category, double monthlyAmount)
+    {
+        if (category == null || category.trim().isEmpty())
+        {
+            throw new IllegalArgumentException("The category name cannot be empty");
+        }
+        OperationType type = categories.get(category.trim());
+        if (type == OperationType.INCOME)
+        {
+            throw new IllegalArgumentException(
+                    String.format("The category '%s' must be of type '%s'",
+                    category.trim(), OperationType.EXPENSE.getRussianName()));
+        }
+        budgets.setBudget(records.getDictionary().idOf(category.trim()), Money.fromAmount(monthlyAmount));
+    }
+    // Monthly budgets by category
+    public Map<String, Double> getBudgets()
+    {
+        CategoryDictionary dictionary = records.getDictionary();
+        Map<String, Double> result = new HashMap<>();
+        for (int id = 0; id < dictionary.size(); id++)
+        {
+            if (budgets.getBudget(id) > 0)
+            {
+                result.put(dictionary.nameOf(id), Money.toAmount(budgets.getBudget(id)));
+            }
+        }
+        return result;
+    }
+    // Expenses of the category in the month, read from the running sums
+    public double getMonthlySpending(String category, YearMonth month)
+    {
+        int id = records.getDictionary().find(category);
+        return id < 0 ? 0 : Money.toAmount(budgets.getSpending(id, month));
+    }
+    // Percentages of a budget that raise an alert, 80 and 100 by default
+    public void setBudgetThresholds(int... percents)
+    {
+        budgets.setThresholds(percents);
+    }
+    public void addBudgetListener(BudgetMonitor.Listener listener)
+    {
+        budgets.addListener(listener);
+    }
+    public void removeBudgetListener(BudgetMonitor.Listener listener)
+    {
+        budgets.removeListener(listener);
     }
     // Delete an entry by ID
     public boolean removeRecord(int id)
     {
-        return records.removeIf(record -> record.getId() == id);
+        return metrics.time(TrackerMetrics.Operation.REMOVE_RECORD, () ->
+        {
+            int slot = records.findLatestSlot(id);
+            if (slot < 0)
+            {
+                return false;
+            }
+            // Ids are not unique, so every slot chained under the id is removed
+            while (slot >= 0)
+            {
+                int previous = records.findPreviousSlot(slot);
+                unindexRecord(slot);
+                records.remove(slot);
+                slot = previous;
+            }
+            if (records.needsCompaction())
+            {
+                dateIndex.remap(records.compact());
+                rebuildPostings();
+            }
+            if (journal != null)
+            {
+                journal.logRemove(id);
+                checkpointIfNeeded();
+            }
+            forgetImportedBlocks();
+            return true;
+        });
     }
     // Update the record
     public boolean updateRecord(int id, OperationType newType, String newCategory,
                                 double newAmount, LocalDate newDate)
     {
-        for (FinancialRecord record : records)
+        return metrics.time(TrackerMetrics.Operation.UPDATE_RECORD, () ->
         {
-            if (record.getId() == id)
+            if (!updateRecord(id, newType, newCategory, Money.fromAmount(newAmount), (int) newDate.toEpochDay()))
             {
-                record.setType(newType);
-                record.setCategory(newCategory);
-                record.setAmount(newAmount);
-                record.setDate(newDate);
-                return true;
+                return false;
             }
+            forgetImportedBlocks();
+            return true;
+        });
+    }
+    // A record removed or changed here may come from a block that an import would skip as unchanged, so
+    // every file is read in full on its next import. Fingerprints per record would keep the skipping for
+    // the other blocks, but cost a long for every record to spare a read after a local edit.
+    private void forgetImportedBlocks()
+    {
+        importedBlocks.clear();
+    }
+    private boolean updateRecord(int id, OperationType newType, String newCategory, long newCents, int newEpochDay)
+    {
+        int slot = records.findSlot(id);
+        if (slot < 0)
+        {
+            return false;
         }
-        return false;
+        // The budget thresholds are checked against the spending before the whole update
+        budgets.beginUpdate();
+        try
+        {
+            unindexRecord(slot);
+            records.set(slot, newType, newCategory, newCents, newEpochDay);
+            indexRecord(slot);
+        }
+        finally
+        {
+            budgets.endUpdate();
+        }
+        if (journal != null)
+        {
+            journal.logUpdate(id, newType, newCategory, newCents, newEpochDay);
+            checkpointIfNeeded();
+        }
+        return true;
     }
     // Auxiliary methods
+    private void indexRecord(int slot)
+    {
+        // The record may have brought a new category name into the dictionary
+        categories.foldNewNames();
+        dateIndex.insert(records.getEpochDay(slot), slot);
+        rollup.add(records.getEpochDay(slot), records.getCategoryId(slot),
+                records.getTypeOrdinal(slot), records.getCents(slot));
+        postings.add(slot, records.getCategoryId(slot), records.getTypeOrdinal(slot));
+        totals.add(records.getCategoryId(slot), records.getTypeOrdinal(slot), records.getCents(slot));
+        if (batching)
+        {
+            batchMinDay = Math.min(batchMinDay, records.getEpochDay(slot));
+            batchMaxDay = Math.max(batchMaxDay, records.getEpochDay(slot));
+        }
+        else
+        {
+            statisticsCache.invalidate(records.getEpochDay(slot));
+        }
+        budgets.add(records.getCategoryId(slot), records.getTypeOrdinal(slot),
+                records.getEpochDay(slot), records.getCents(slot));
+    }
+    private void unindexRecord(int slot)
+    {
+        dateIndex.remove(records.getEpochDay(slot), slot);
+        rollup.remove(records.getEpochDay(slot), records.getCategoryId(slot),
+                records.getTypeOrdinal(slot), records.getCents(slot));
+        postings.remove(slot, records.getCategoryId(slot), records.getTypeOrdinal(slot));
+        totals.remove(records.getCategoryId(slot), records.getTypeOrdinal(slot), records.getCents(slot));
+        statisticsCache.invalidate(records.getEpochDay(slot));
+        budgets.remove(records.getCategoryId(slot), records.getTypeOrdinal(slot),
+                records.getEpochDay(slot), records.getCents(slot));
+    }
+    // Compaction renumbers the slots, so the posting lists are filled again from the store
+    private void rebuildPostings()
+    {
+        postings.clear();
+        for (int slot = 0; slot < records.slotCount(); slot++)
+        {
+            postings.add(slot, records.getCategoryId(slot), records.getTypeOrdinal(slot));
+        }
+    }
+    private List<FinancialRecord> toRecords(int[] slots)
+    {
+        List<FinancialRecord> result = new ArrayList<>(slots.length);
+        for (int slot : slots)
+        {
+            result.add(records.getRecord(slot));
+        }
+        return result;
+    }
+    // Sums and counts per category id, answered by the rollup or by walking the date index
+    private void collectByCategory(int startDay, int endDay, long[] sums, long[] counts)
+    {
+        if (rollup.isAvailable())
+        {
+            for (int id = 0; id < sums.length; id++)
+            {
+                for (int type = 0; type < OperationType.values().length; type++)
+                {
+                    sums[id] += rollup.sum(id, type, startDay, endDay);
+                    counts[id] += rollup.count(id, type, startDay, endDay);
+                }
+            }
+            return;
+        }
+        metrics.recordRollupFallback();
+        int[] slots = dateIndex.slotsInRange(startDay, endDay);
+        if (parallelAggregator != null)
+        {
+            parallelAggregator.sumByCategory(records, slots, sums, counts);
+            return;
+        }
+        for (int slot : slots)
+        {
+            sums[records.getCategoryId(slot)] += records.getCents(slot);
+            counts[records.getCategoryId(slot)]++;
+        }
+    }
+    // Sums and counts per type ordinal, answered by the rollup or by walking the date index
+    private void collectByType(int startDay, int endDay, long[] sums, long[] counts)
+    {
+        if (rollup.isAvailable())
+        {
+            for (int type = 0; type < sums.length; type++)
+            {
+                sums[type] = rollup.sumByType(type, startDay, endDay);
+                counts[type] = rollup.countByType(type, startDay, endDay);
+            }
+            return;
+        }
+        metrics.recordRollupFallback();
+        int[] slots = dateIndex.slotsInRange(startDay, endDay);
+        if (parallelAggregator != null)
+        {
+            parallelAggregator.sumByType(records, slots, sums, counts);
+            return;
+        }
+        for (int slot : slots)
+        {
+            sums[records.getTypeOrdinal(slot)] += records.getCents(slot);
+            counts[records.getTypeOrdinal(slot)]++;
+        }
+    }
+    private static void checkTotal(String name, long sum, long count, long expectedSum, long expectedCount)
+    {
+        if (sum != expectedSum || count != expectedCount)
+        {
+            throw new IllegalStateException(String.format(
+                    "Running total of %s is %d cents over %d records, but the records add up to %d cents over %d",
+                    name, sum, count, expectedSum, expectedCount));
+        }
+    }
     private void validateDateRange(LocalDate start, LocalDate end)
     {
         if (start == null || end == null)
@@ -183,10 +707,6 @@ public class FinanceTracker
                     "The start date cannot be after the end date");
         }
     }
-    private boolean isDateInRange(LocalDate date, LocalDate start, LocalDate end)
-    {
-        return !date.isBefore(start) && !date.isAfter(end);
-    }
 
     public int getRecordsCount()
     {
@@ -198,41 +718,541 @@ public class FinanceTracker
     }
     public double getTotalIncome()
     {
-        return records.stream()
-                .filter(record -> record.getType() == OperationType.INCOME)
-                .mapToDouble(FinancialRecord::getAmount)
-                .sum();
+        return Money.toAmount(getTotalIncomeCents());
     }
     public double getTotalExpenses()
     {
-        return records.stream()
-                .filter(record -> record.getType() == OperationType.EXPENSE)
-                .mapToDouble(FinancialRecord::getAmount)
-                .sum();
+        return Money.toAmount(getTotalExpensesCents());
+    }
+    public long getTotalIncomeCents()
+    {
+        return totals.sumByType(OperationType.INCOME.ordinal());
+    }
+    public long getTotalExpensesCents()
+    {
+        return totals.sumByType(OperationType.EXPENSE.ordinal());
+    }
+    // All-time sum of every category that has records
+    public Map<String, Double> getTotalsByCategory()
+    {
+        return metrics.time(TrackerMetrics.Operation.GET_TOTALS_BY_CATEGORY, () ->
+        {
+            CategoryDictionary dictionary = records.getDictionary();
+            Map<String, Double> result = new HashMap<>();
+            for (int id = 0; id < dictionary.size(); id++)
+            {
+                if (totals.countByCategory(id) > 0)
+                {
+                    result.put(dictionary.nameOf(id), Money.toAmount(totals.sumByCategory(id)));
+                }
+            }
+            return result;
+        });
+    }
+    // Self-check: recomputes the totals from every record and throws IllegalStateException if the
+    // running totals differ
+    public void checkTotals()
+    {
+        int types = OperationType.values().length;
+        int categoryCount = records.getDictionary().size();
+        long[] typeSums = new long[types];
+        long[] typeCounts = new long[types];
+        long[] categorySums = new long[categoryCount];
+        long[] categoryCounts = new long[categoryCount];
+        ParallelAggregator aggregator = parallelAggregator != null
+                ? parallelAggregator
+                : new ParallelAggregator(ForkJoinPool.commonPool(), Integer.MAX_VALUE);
+        aggregator.sumByType(records, null, typeSums, typeCounts);
+        aggregator.sumByCategory(records, null, categorySums, categoryCounts);
+        for (OperationType type : OperationType.values())
+        {
+            checkTotal(type.name(), totals.sumByType(type.ordinal()), totals.countByType(type.ordinal()),
+                    typeSums[type.ordinal()], typeCounts[type.ordinal()]);
+        }
+        for (int id = 0; id < categoryCount; id++)
+        {
+            checkTotal("category '" + records.getDictionary().nameOf(id) + "'", totals.sumByCategory(id),
+                    totals.countByCategory(id), categorySums[id], categoryCounts[id]);
+        }
+    }
+    // Latency, throughput and parse error metrics; off until enabled
+    public TrackerMetrics getMetrics()
+    {
+        return metrics;
+    }
+    // Cache of the period statistics, for its hit, miss and eviction counters and to change its capacity
+    public StatisticsCache getStatisticsCache()
+    {
+        return statisticsCache;
+    }
+    // Opt-in parallel mode: statistics the rollup cannot answer and queries over at least
+    // threshold records are split into segments summed on the pool. A null pool turns the mode off.
+    public void setParallelAggregation(ForkJoinPool pool, int threshold)
+    {
+        parallelAggregator = pool == null ? null : new ParallelAggregator(pool, threshold);
+        queryEngine.setParallelAggregation(parallelAggregator);
+    }
+    // Parallel mode on the common pool with the default threshold
+    public void setParallelAggregation(boolean enabled)
+    {
+        setParallelAggregation(enabled ? ForkJoinPool.commonPool() : null, ParallelAggregator.DEFAULT_THRESHOLD);
     }
     private FileHandler fileHandler = new FileHandler();
+    private BinaryFileHandler binaryFileHandler = new BinaryFileHandler();
+    // Fingerprints of the blocks of every CSV file as last imported, see importFromFile
+    private final Map<String, Set<Long>> importedBlocks = new HashMap<>();
 
+    public static final String JOURNAL_EXTENSION = ".journal";
+    private static final long GROUP_COMMIT_MILLIS = 10;
+    private static final int MIN_CHECKPOINT_ENTRIES = 100_000;
+    private static final int MIN_BULK_INSERT = 1024;
+
+    // Files ending with BinaryFileHandler.EXTENSION use the binary ledger format, all others CSV
     public void saveToFile(String fileName)
     {
-        fileHandler.saveToFile(records, fileName);
+        long started = metrics.start();
+        int count = -1;
+        try
+        {
+            if (BinaryFileHandler.isBinaryFile(fileName))
+            {
+                count = binaryFileHandler.saveToFile(records, fileName);
+            }
+            else
+            {
+                count = fileHandler.saveToFile(records, fileName);
+            }
+        }
+        finally
+        {
+            recordFileTransfer(TrackerMetrics.Operation.SAVE_TO_FILE, TrackerMetrics.Transfer.SAVE,
+                    started, count, fileName);
+        }
+    }
+    // Writes the ledger as monthly partitions with summaries into the directory, see PartitionedLedger
+    public void saveToPartitions(String directory)
+    {
+        try
+        {
+            PartitionedLedger.create(Paths.get(directory), records, dateIndex.allSlots());
+            System.out.println("The data was successfully saved to partitions: " + directory);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Error writing the partitions: " + e.getMessage());
+        }
+    }
+    // Loads only the monthly partitions overlapping the period; their records outside it are loaded as well
+    public void loadFromPartitions(String directory, LocalDate start, LocalDate end)
+    {
+        validateDateRange(start, end);
+        RecordBatch batch = new RecordBatch();
+        int partitions = 0;
+        try
+        {
+            for (Path file : PartitionedLedger.open(Paths.get(directory), 1).getPartitionFiles(start, end))
+            {
+                binaryFileHandler.readLedger(file, batch.getDictionary(), batch);
+                partitions++;
+            }
+        }
+        catch (IOException e)
+        {
+            System.out.println("Error reading the partitions: " + e.getMessage());
+            return;
+        }
+        addRecords(batch);
+        System.out.println("Uploaded records: " + batch.size() + " from " + partitions + " partitions");
+    }
+    // Copy of the records that stays unchanged while the tracker goes on, for saving in the background
+    public RecordStore snapshotRecords()
+    {
+        return records.copy();
+    }
+    // Writes the binary ledger without progress messages
+    public void writeLedger(Path path) throws IOException
+    {
+        binaryFileHandler.writeLedger(records, path);
+    }
+    // Adds the records of a binary ledger without progress messages
+    public void readLedger(Path path) throws IOException
+    {
+        RecordBatch batch = new RecordBatch();
+        binaryFileHandler.readLedger(path, batch.getDictionary(), batch);
+        addRecords(batch);
+    }
+    // Writes the records of the period as CSV in date order and returns their number, or -1 if the file
+    // could not be written
+    public int exportByDateRange(LocalDate start, LocalDate end, String fileName)
+    {
+        long started = metrics.start();
+        int count = -1;
+        try
+        {
+            validateDateRange(start, end);
+            count = fileHandler.saveToFile(records,
+                    dateIndex.slotsInRange((int) start.toEpochDay(), (int) end.toEpochDay()), fileName);
+            return count;
+        }
+        finally
+        {
+            recordFileTransfer(TrackerMetrics.Operation.EXPORT, null, started, count, fileName);
+        }
+    }
+    // Writes the records of the category (case-insensitive) as CSV and returns their number, or -1 if the
+    // file could not be written
+    public int exportByCategory(String category, String fileName)
+    {
+        long started = metrics.start();
+        int count = -1;
+        try
+        {
+            boolean[] matches = categories.matchIgnoreCase(category);
+            count = fileHandler.saveToFile(records, slot -> matches[records.getCategoryId(slot)], fileName);
+            return count;
+        }
+        finally
+        {
+            recordFileTransfer(TrackerMetrics.Operation.EXPORT, null, started, count, fileName);
+        }
     }
 
     public void loadFromFile(String fileName)
     {
-        List<FinancialRecord> loadedRecord = fileHandler.loadFromFile(fileName);
-        for (FinancialRecord record : loadedRecord)
+        load(fileName, false);
+    }
+
+    // Loads a large file on all cores; records are added in the same order as by loadFromFile
+    public void loadFromFileParallel(String fileName)
+    {
+        load(fileName, true);
+    }
+
+    public void loadFromFileReplace(String fileName)
+    {
+        clearRecords();
+        if (journal != null)
         {
-            this.addRecord(record);
+            journal.logClear();
         }
+        load(fileName, false);
     }
+    // Merges a file into the ledger instead of appending it: a row with a new id is added, a row whose id is
+    // present with other fields updates that record and an identical row is skipped; when an id occurs
+    // several times, its last row counts. Records missing from the file are kept. A CSV file that was
+    // imported before is only parsed where its blocks changed since then, so a nightly sync of a growing
+    // export costs about the size of the change. Ledger files are always read whole, and so is every CSV
+    // file after a record was removed or updated other than by its import.
+    public ImportResult importFromFile(String fileName)
+    {
+        try
+        {
+            return metrics.time(TrackerMetrics.Operation.IMPORT_FROM_FILE, () -> importFile(fileName));
+        }
+        catch (IOException e)
+        {
+            System.err.println("Error reading the file: " + e.getMessage());
+            return new ImportResult(0, 0, 0, 0, 0);
+        }
+    }
+    private ImportResult importFile(String fileName) throws IOException
+    {
+        Path path = Paths.get(fileName);
+        String key = path.toAbsolutePath().normalize().toString();
+        RecordBatch batch = new RecordBatch();
+        long[] fingerprints = null;
+        int blocksSkipped = 0;
+        if (BinaryFileHandler.isBinaryFile(fileName))
+        {
+            binaryFileHandler.readLedger(path, batch.getDictionary(), batch);
+        }
+        else
+        {
+            Set<Long> known = importedBlocks.getOrDefault(key, Collections.emptySet());
+            fingerprints = fileHandler.loadChangedBlocks(path, known, batch.getDictionary(), batch);
+            for (long fingerprint : fingerprints)
+            {
+                if (known.contains(fingerprint))
+                {
+                    blocksSkipped++;
+                }
+            }
+        }
+        int blocksRead = fingerprints == null ? 1 : fingerprints.length - blocksSkipped;
+        ImportResult result = merge(batch, blocksRead, blocksSkipped);
+        // Updated records may have come from the blocks of other files, which must be read in full again
+        if (result.getUpdated() > 0)
+        {
+            importedBlocks.clear();
+        }
+        // Only the blocks of the file as it is now are kept, and only once merged, so that a failed import
+        // is read again in full
+        if (fingerprints != null)
+        {
+            Set<Long> known = new HashSet<>(fingerprints.length * 2);
+            for (long fingerprint : fingerprints)
+            {
+                known.add(fingerprint);
+            }
+            importedBlocks.put(key, known);
+        }
+        return result;
+    }
+    private ImportResult merge(RecordBatch batch, int blocksRead, int blocksSkipped)
+    {
+        CategoryDictionary batchCategories = batch.getDictionary();
+        int[] storeCategories = new int[batchCategories.size()];
+        for (int id = 0; id < storeCategories.length; id++)
+        {
+            storeCategories[id] = records.getDictionary().find(batchCategories.nameOf(id));
+        }
+        IntIntHashMap lastRow = new IntIntHashMap(batch.size());
+        for (int i = 0; i < batch.size(); i++)
+        {
+            if (batch.hasId(i))
+            {
+                lastRow.put(batch.getId(i), i);
+            }
+        }
 
-    public void loadFromFileReplace(String fileName)
+        RecordBatch added = new RecordBatch();
+        int[] updates = new int[batch.size()];
+        int updateCount = 0;
+        int unchanged = 0;
+        for (int i = 0; i < batch.size(); i++)
+        {
+            int id = batch.getId(i);
+            if (batch.hasId(i) && lastRow.get(id, -1) != i)
+            {
+                continue;
+            }
+            // A row without an id is always new; addRecords numbers it
+            int slot = batch.hasId(i) ? records.findSlot(id) : -1;
+            int category = batch.getCategoryId(i);
+            if (slot < 0)
+            {
+                added.accept(id, batch.getType(i), added.getDictionary().idOf(batchCategories.nameOf(category)),
+                        batch.getCents(i), batch.getEpochDay(i));
+            }
+            else if (records.getType(slot) == batch.getType(i)
+                    && records.getCategoryId(slot) == storeCategories[category]
+                    && records.getCents(slot) == batch.getCents(i)
+                    && records.getEpochDay(slot) == batch.getEpochDay(i))
+            {
+                unchanged++;
+            }
+            else
+            {
+                updates[updateCount++] = i;
+            }
+        }
+        // The additions are checked against the category types as a whole, so they go first
+        addRecords(added);
+        for (int u = 0; u < updateCount; u++)
+        {
+            int i = updates[u];
+            updateRecord(batch.getId(i), batch.getType(i), batchCategories.nameOf(batch.getCategoryId(i)),
+                    batch.getCents(i), batch.getEpochDay(i));
+        }
+        return new ImportResult(added.size(), updateCount, unchanged, blocksRead, blocksSkipped);
+    }
+    private void clearRecords()
     {
-        List<FinancialRecord> loadedRecords = fileHandler.loadFromFile(fileName);
         this.records.clear();
-        for (FinancialRecord record : loadedRecords)
+        this.dateIndex.clear();
+        this.rollup.clear();
+        this.postings.clear();
+        this.totals.clear();
+        this.statisticsCache.clear();
+        this.budgets.clear();
+        this.importedBlocks.clear();
+    }
+    private void load(String fileName, boolean parallel)
+    {
+        long started = metrics.start();
+        // The file is read into a batch first so that the storage grows once and the index is sorted once
+        RecordBatch batch = new RecordBatch();
+        int count = -1;
+        try
+        {
+            int read;
+            if (BinaryFileHandler.isBinaryFile(fileName))
+            {
+                read = binaryFileHandler.loadFromFile(fileName, batch.getDictionary(), batch);
+            }
+            else if (parallel)
+            {
+                read = fileHandler.loadFromFileParallel(fileName, batch.getDictionary(), batch);
+            }
+            else
+            {
+                read = fileHandler.loadFromFile(fileName, batch.getDictionary(), batch);
+            }
+            // Rows read before a failure are still added
+            addRecords(batch);
+            count = read;
+        }
+        finally
+        {
+            recordFileTransfer(TrackerMetrics.Operation.LOAD_FROM_FILE, TrackerMetrics.Transfer.LOAD,
+                    started, count, fileName);
+        }
+    }
+    // The handlers report their own errors and return -1 for a file they could not read or write; such a
+    // call, or one that threw, is counted as an error. Exports pass no transfer.
+    private void recordFileTransfer(TrackerMetrics.Operation operation, TrackerMetrics.Transfer transfer,
+                                    long started, int count, String fileName)
+    {
+        if (count < 0)
+        {
+            metrics.recordError(operation, started);
+            return;
+        }
+        metrics.record(operation, started);
+        // The file size is not looked up while the metrics are off
+        if (transfer == null || started == 0)
+        {
+            return;
+        }
+        long size = 0;
+        try
+        {
+            size = Files.size(Paths.get(fileName));
+        }
+        catch (IOException e)
+        {
+            // Counted without bytes
+        }
+        metrics.recordTransfer(transfer, started, count, size);
+    }
+    // Same as addRecord(FinancialRecord) for a record already encoded by the parser
+    private void addLoadedRecord(int id, OperationType type, int categoryId, long cents, int epochDay)
+    {
+        indexRecord(records.add(id, type, categoryId, cents, epochDay));
+
+        categories.registerIfAbsent(categoryId, type);
+        if (journal != null)
+        {
+            journal.logAdd(id, type, records.getDictionary().nameOf(categoryId), cents, epochDay);
+            checkpointIfNeeded();
+        }
+    }
+
+    // Journal of the changes made since the last snapshot, or null when changes are only saved explicitly
+    private Journal journal;
+
+    // Restores the state from the ledger snapshot and its journal, then records every further change in
+    // the journal. The snapshot is rewritten only on checkpoints, so persisting a change costs
+    // a journal entry instead of a full save.
+    public void openJournal(String ledgerFileName)
+    {
+        closeJournal();
+        // Checkpoints always write the binary format, so a CSV name would be overwritten with it
+        if (!BinaryFileHandler.isBinaryFile(ledgerFileName))
+        {
+            System.out.println("Error opening the journal: the ledger file must end with "
+                    + BinaryFileHandler.EXTENSION);
+            return;
+        }
+        Path snapshot = Paths.get(ledgerFileName);
+        Journal opened = null;
+        try
+        {
+            opened = new Journal(Paths.get(ledgerFileName + JOURNAL_EXTENSION), snapshot);
+            opened.recoverSnapshot();
+            if (Files.exists(snapshot))
+            {
+                clearRecords();
+                readLedger(snapshot);
+            }
+            int replayed = opened.replay(this::applyJournalEntry);
+            System.out.println("Journal entries replayed: " + replayed);
+            opened.startGroupCommit(GROUP_COMMIT_MILLIS);
+            journal = opened;
+        }
+        catch (IOException e)
+        {
+            System.out.println("Error opening the journal: " + e.getMessage());
+            closeQuietly(opened);
+        }
+    }
+    // Writes a full snapshot and starts an empty journal
+    public void checkpoint()
+    {
+        if (journal == null)
+        {
+            return;
+        }
+        try
+        {
+            journal.checkpoint(path -> binaryFileHandler.writeLedger(records, path), categories);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Error writing the snapshot: " + e.getMessage());
+        }
+    }
+    // Commits the pending journal entries and stops journaling
+    public void closeJournal()
+    {
+        if (journal == null)
+        {
+            return;
+        }
+        try
+        {
+            journal.close();
+        }
+        catch (IOException e)
+        {
+            System.out.println("Error closing the journal: " + e.getMessage());
+        }
+        journal = null;
+    }
+    private static void closeQuietly(Journal opened)
+    {
+        if (opened == null)
+        {
+            return;
+        }
+        try
+        {
+            opened.close();
+        }
+        catch (IOException e)
+        {
+            // The error that made the journal unusable was already reported
+        }
+    }
+    private void checkpointIfNeeded()
+    {
+        // Replay time stays proportional to the ledger size
+        if (journal.getEntriesSinceCheckpoint() >= Math.max(MIN_CHECKPOINT_ENTRIES, records.size()))
+        {
+            checkpoint();
+        }
+    }
+    // Applies a replayed entry; the journal is not open yet, so nothing is logged again
+    private void applyJournalEntry(byte operation, int id, OperationType type, String category,
+                                   long cents, int epochDay)
+    {
+        switch (operation)
         {
-            this.addRecord(record);
+            case Journal.ADD:
+                addLoadedRecord(id, type, records.getDictionary().idOf(category), cents, epochDay);
+                break;
+            case Journal.UPDATE:
+                updateRecord(id, type, category, cents, epochDay);
+                break;
+            case Journal.REMOVE:
+                removeRecord(id);
+                break;
+            case Journal.ADD_CATEGORY:
+                categories.put(category, type);
+                break;
+            case Journal.CLEAR:
+                clearRecords();
+                break;
         }
     }
 }
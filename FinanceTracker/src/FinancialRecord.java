@@ -5,17 +5,27 @@ public class FinancialRecord
     private int id;
     private OperationType type;
     private String category;
-    private Double amount;
+    // Amount in minor units, see Money
+    private long cents;
     private LocalDate date;
 
-    public FinancialRecord(int id, OperationType type, String category, Double amount, LocalDate date)
+    public FinancialRecord(int id, OperationType type, String category, double amount, LocalDate date)
+    {
+        this(id, type, category, Money.fromAmount(amount), date);
+    }
+    private FinancialRecord(int id, OperationType type, String category, long cents, LocalDate date)
     {
         this.id = id;
         this.type = type;
         this.category = category;
-        this.amount = amount;
+        this.cents = cents;
         this.date = date;
     }
+    // Creates a record with an amount already in minor units
+    public static FinancialRecord ofCents(int id, OperationType type, String category, long cents, LocalDate date)
+    {
+        return new FinancialRecord(id, type, category, cents, date);
+    }
 
     public int getId()
     {
@@ -32,9 +42,14 @@ public class FinancialRecord
         return category;
     }
 
-    public Double getAmount()
+    public double getAmount()
+    {
+        return Money.toAmount(cents);
+    }
+
+    public long getCents()
     {
-        return amount;
+        return cents;
     }
 
     public LocalDate getDate()
@@ -53,9 +68,14 @@ public class FinancialRecord
         this.category = category;
     }
 
-    public void setAmount(Double amount)
+    public void setAmount(double amount)
+    {
+        this.cents = Money.fromAmount(amount);
+    }
+
+    public void setCents(long cents)
     {
-        this.amount = amount;
+        this.cents = cents;
     }
 
     public void setDate(LocalDate date)
@@ -66,8 +86,8 @@ public class FinancialRecord
     @Override
     public String toString()
     {
-        return String.format("ID: %d | %s | Category: %-10s | Amount: %10.2f | Date: %s",
+        return String.format("ID: %d | %s | Category: %-10s | Amount: %10s | Date: %s",
                 id, type == OperationType.INCOME ? "Income" : "Expense",
-                category, amount, date.toString());
+                category, Money.format(cents), date.toString());
     }
 }
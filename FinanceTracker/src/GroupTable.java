@@ -0,0 +1,154 @@
+import java.util.Arrays;
+
+// Sum, count, min and max of amounts in cents per group, where a group is a tuple of int keys of fixed width.
+// Groups are kept in insertion order in flat arrays and found through an open-addressing table,
+// so accumulating a record allocates nothing.
+public class GroupTable
+{
+    private final int width;
+    private int[] keys;
+    private long[] sums;
+    private long[] counts;
+    private long[] mins;
+    private long[] maxs;
+    private int size;
+    // Group index + 1 per bucket, 0 for an empty bucket
+    private int[] buckets = new int[16];
+    // Consecutive records usually fall into the same group
+    private int lastGroup = -1;
+
+    public GroupTable(int width)
+    {
+        this.width = width;
+        int capacity = 8;
+        keys = new int[capacity * width];
+        sums = new long[capacity];
+        counts = new long[capacity];
+        mins = new long[capacity];
+        maxs = new long[capacity];
+    }
+
+    // Adds the amount to the group with the given keys, creating the group if needed
+    public void add(int[] key, long cents)
+    {
+        int group = groupOf(key, 0);
+        sums[group] += cents;
+        counts[group]++;
+        mins[group] = Math.min(mins[group], cents);
+        maxs[group] = Math.max(maxs[group], cents);
+    }
+    // Folds the groups of another table with the same width into this one
+    public void merge(GroupTable other)
+    {
+        for (int i = 0; i < other.size; i++)
+        {
+            int group = groupOf(other.keys, i * width);
+            sums[group] += other.sums[i];
+            counts[group] += other.counts[i];
+            mins[group] = Math.min(mins[group], other.mins[i]);
+            maxs[group] = Math.max(maxs[group], other.maxs[i]);
+        }
+    }
+
+    public int size()
+    {
+        return size;
+    }
+    public int getWidth()
+    {
+        return width;
+    }
+    public int getKey(int group, int position)
+    {
+        return keys[group * width + position];
+    }
+    public long getSum(int group)
+    {
+        return sums[group];
+    }
+    public long getCount(int group)
+    {
+        return counts[group];
+    }
+    public long getMin(int group)
+    {
+        return mins[group];
+    }
+    public long getMax(int group)
+    {
+        return maxs[group];
+    }
+
+    // Index of the group whose keys are key[offset..offset + width), created empty if missing
+    private int groupOf(int[] key, int offset)
+    {
+        if (lastGroup >= 0
+                && Arrays.equals(keys, lastGroup * width, lastGroup * width + width, key, offset, offset + width))
+        {
+            return lastGroup;
+        }
+        lastGroup = find(key, offset);
+        return lastGroup;
+    }
+    private int find(int[] key, int offset)
+    {
+        int mask = buckets.length - 1;
+        for (int i = hash(key, offset) & mask; ; i = (i + 1) & mask)
+        {
+            int group = buckets[i] - 1;
+            if (group < 0)
+            {
+                group = append(key, offset);
+                buckets[i] = group + 1;
+                if (size * 4 > buckets.length * 3)
+                {
+                    rehash();
+                }
+                return group;
+            }
+            if (Arrays.equals(keys, group * width, group * width + width, key, offset, offset + width))
+            {
+                return group;
+            }
+        }
+    }
+    private int append(int[] key, int offset)
+    {
+        if (size == sums.length)
+        {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity * width);
+            sums = Arrays.copyOf(sums, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+            maxs = Arrays.copyOf(maxs, capacity);
+        }
+        System.arraycopy(key, offset, keys, size * width, width);
+        mins[size] = Long.MAX_VALUE;
+        maxs[size] = Long.MIN_VALUE;
+        return size++;
+    }
+    private void rehash()
+    {
+        buckets = new int[buckets.length * 2];
+        int mask = buckets.length - 1;
+        for (int group = 0; group < size; group++)
+        {
+            int i = hash(keys, group * width) & mask;
+            while (buckets[i] != 0)
+            {
+                i = (i + 1) & mask;
+            }
+            buckets[i] = group + 1;
+        }
+    }
+    private int hash(int[] key, int offset)
+    {
+        int hash = 0;
+        for (int i = offset; i < offset + width; i++)
+        {
+            hash = (hash + key[i]) * 0x9E3779B9;
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,49 @@
+// Outcome of FinanceTracker.importFromFile: what happened to the rows that were read, and how many blocks
+// of the file were read or skipped because they had been imported before
+public class ImportResult
+{
+    private final int added;
+    private final int updated;
+    private final int unchanged;
+    private final int blocksRead;
+    private final int blocksSkipped;
+
+    public ImportResult(int added, int updated, int unchanged, int blocksRead, int blocksSkipped)
+    {
+        this.added = added;
+        this.updated = updated;
+        this.unchanged = unchanged;
+        this.blocksRead = blocksRead;
+        this.blocksSkipped = blocksSkipped;
+    }
+
+    // Rows whose id was not in the ledger yet
+    public int getAdded()
+    {
+        return added;
+    }
+    // Rows whose id was in the ledger with different fields
+    public int getUpdated()
+    {
+        return updated;
+    }
+    // Rows that were already in the ledger as they are
+    public int getUnchanged()
+    {
+        return unchanged;
+    }
+    public int getBlocksRead()
+    {
+        return blocksRead;
+    }
+    public int getBlocksSkipped()
+    {
+        return blocksSkipped;
+    }
+    @Override
+    public String toString()
+    {
+        return String.format("added %d, updated %d, unchanged %d, blocks read %d, blocks skipped %d",
+                added, updated, unchanged, blocksRead, blocksSkipped);
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.Arrays;
+
+// Open-addressing hash map from int keys to int values, without boxing
+public class IntIntHashMap
+{
+    private int[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int mask;
+    private int size;
+
+    public IntIntHashMap()
+    {
+        this(16);
+    }
+    public IntIntHashMap(int expectedSize)
+    {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    // Returns the value of the key or the given default
+    public int get(int key, int missing)
+    {
+        for (int i = indexOf(key); used[i]; i = (i + 1) & mask)
+        {
+            if (keys[i] == key)
+            {
+                return values[i];
+            }
+        }
+        return missing;
+    }
+    public void put(int key, int value)
+    {
+        int i = indexOf(key);
+        while (used[i])
+        {
+            if (keys[i] == key)
+            {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        used[i] = true;
+        keys[i] = key;
+        values[i] = value;
+        if (++size > (mask + 1) * 3 / 4)
+        {
+            rehash((mask + 1) * 2);
+        }
+    }
+    public boolean remove(int key)
+    {
+        int i = indexOf(key);
+        while (used[i])
+        {
+            if (keys[i] == key)
+            {
+                shiftBack(i);
+                size--;
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+    // Grows the table once so that expectedSize entries fit without rehashing
+    public void ensureCapacity(int expectedSize)
+    {
+        int capacity = tableSizeFor(expectedSize);
+        if (capacity > mask + 1)
+        {
+            rehash(capacity);
+        }
+    }
+    public void clear()
+    {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+    public int size()
+    {
+        return size;
+    }
+
+    // Closes the gap left by a removed entry so that probe chains stay unbroken
+    private void shiftBack(int gap)
+    {
+        int i = gap;
+        while (true)
+        {
+            i = (i + 1) & mask;
+            if (!used[i])
+            {
+                break;
+            }
+            int home = indexOf(keys[i]);
+            // The entry may move into the gap only if the gap lies on its probe path
+            if (((i - home) & mask) >= ((i - gap) & mask))
+            {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        used[gap] = false;
+    }
+    private void rehash(int capacity)
+    {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldUsed[i])
+            {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+    private void allocate(int capacity)
+    {
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+    private int indexOf(int key)
+    {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+    private static int tableSizeFor(int expectedSize)
+    {
+        int capacity = 16;
+        while (capacity * 3 / 4 < expectedSize)
+        {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+}
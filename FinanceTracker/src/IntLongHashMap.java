@@ -0,0 +1,88 @@
+import java.util.Arrays;
+
+// Open-addressing hash map from int keys to long sums, without boxing; entries are never removed
+public class IntLongHashMap
+{
+    private int[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int mask;
+    private int size;
+
+    public IntLongHashMap()
+    {
+        allocate(16);
+    }
+
+    // Returns the value of the key or the given default
+    public long get(int key, long missing)
+    {
+        for (int i = indexOf(key); used[i]; i = (i + 1) & mask)
+        {
+            if (keys[i] == key)
+            {
+                return values[i];
+            }
+        }
+        return missing;
+    }
+    // Adds the delta to the value of the key, starting from 0, and returns the new value
+    public long add(int key, long delta)
+    {
+        int i = indexOf(key);
+        while (used[i])
+        {
+            if (keys[i] == key)
+            {
+                values[i] += delta;
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        used[i] = true;
+        keys[i] = key;
+        values[i] = delta;
+        if (++size > (mask + 1) * 3 / 4)
+        {
+            rehash((mask + 1) * 2);
+        }
+        return delta;
+    }
+    public void clear()
+    {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+    public int size()
+    {
+        return size;
+    }
+
+    private void rehash(int capacity)
+    {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldUsed[i])
+            {
+                add(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+    private void allocate(int capacity)
+    {
+        keys = new int[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+    private int indexOf(int key)
+    {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,387 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Append-only write-ahead journal of tracker mutations, kept next to a ledger snapshot.
+// Entries are buffered and written with one fsync per group commit. A checkpoint writes a new
+// snapshot, marks it in the journal and then starts a fresh journal, so that after a crash
+// the state is always the latest snapshot plus the journal entries after the last checkpoint.
+//
+// Entry layout, little-endian: payload length, operation byte, payload, CRC32 of operation and payload
+public class Journal implements AutoCloseable
+{
+    public static final byte ADD = 1;
+    public static final byte UPDATE = 2;
+    public static final byte REMOVE = 3;
+    public static final byte ADD_CATEGORY = 4;
+    public static final byte CLEAR = 5;
+    public static final byte CHECKPOINT = 6;
+
+    private static final int MAGIC = 0x4C4E524A; // "JRNL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int GROUP_COMMIT_BYTES = 64 << 10;
+
+    // Receives the replayed entries; fields an operation does not use are zero or null
+    public interface EntryHandler
+    {
+        void apply(byte operation, int id, OperationType type, String category, long cents, int epochDay);
+    }
+    // Writes a complete ledger snapshot to the given path
+    public interface SnapshotWriter
+    {
+        void write(Path path) throws IOException;
+    }
+
+    private final Path path;
+    private final Path snapshot;
+    private FileChannel channel;
+    private ByteBuffer pending = ByteBuffer.allocate(GROUP_COMMIT_BYTES * 2).order(ByteOrder.LITTLE_ENDIAN);
+    private long entriesSinceCheckpoint;
+    private ScheduledExecutorService committer;
+
+    // Results of the last scan of the journal file
+    private long validEnd;
+    private long replayStart;
+    private boolean checkpointIsLast;
+
+    public Journal(Path path, Path snapshot) throws IOException
+    {
+        this.path = path;
+        this.snapshot = snapshot;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE)
+        {
+            channel.truncate(0);
+            channel.write(header(), 0);
+            channel.force(true);
+        }
+        scan();
+    }
+
+    // Completes a checkpoint that was interrupted after its marker was written, or discards an unfinished one.
+    // Must be called before the snapshot is loaded.
+    public void recoverSnapshot() throws IOException
+    {
+        Path temporary = temporary(snapshot);
+        if (Files.exists(temporary))
+        {
+            if (checkpointIsLast)
+            {
+                Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            else
+            {
+                Files.delete(temporary);
+            }
+        }
+        // A journal that still ends with a checkpoint was not reset, so a later checkpoint could be mistaken for it
+        if (checkpointIsLast)
+        {
+            startFresh();
+        }
+    }
+    // Feeds the entries written after the last checkpoint to the handler and returns their number
+    public int replay(EntryHandler handler) throws IOException
+    {
+        ByteBuffer buffer = read();
+        int count = 0;
+        for (int position = (int) replayStart; position < validEnd; )
+        {
+            int length = buffer.getInt(position);
+            ByteBuffer entry = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            entry.position(position + 4).limit(position + 5 + length);
+            byte operation = entry.get();
+            if (operation != CHECKPOINT)
+            {
+                apply(operation, entry, handler);
+                count++;
+            }
+            position += 4 + 1 + length + 4;
+        }
+        return count;
+    }
+
+    // The log methods only buffer; a failed write is reported and the journal keeps accepting entries
+    public synchronized void logAdd(int id, OperationType type, String category, long cents, int epochDay)
+    {
+        logRecord(ADD, id, type, category, cents, epochDay);
+    }
+    public synchronized void logUpdate(int id, OperationType type, String category, long cents, int epochDay)
+    {
+        logRecord(UPDATE, id, type, category, cents, epochDay);
+    }
+    public synchronized void logRemove(int id)
+    {
+        int start = beginEntry(REMOVE, 4);
+        pending.putInt(id);
+        endEntry(start);
+    }
+    public synchronized void logAddCategory(String category, OperationType type)
+    {
+        byte[] name = category.getBytes(StandardCharsets.UTF_8);
+        int start = beginEntry(ADD_CATEGORY, 1 + 2 + name.length);
+        pending.put((byte) type.ordinal()).putShort((short) name.length).put(name);
+        endEntry(start);
+    }
+    public synchronized void logClear()
+    {
+        endEntry(beginEntry(CLEAR, 0));
+    }
+
+    // Writes the buffered entries and forces them to the storage device. If a write fails, the bytes
+    // already written are dropped from the buffer and the rest stay for the next commit, which goes on
+    // at the end of what reached the file.
+    public synchronized void commit() throws IOException
+    {
+        if (pending.position() == 0)
+        {
+            return;
+        }
+        ByteBuffer unwritten = pending.duplicate();
+        unwritten.flip();
+        try
+        {
+            while (unwritten.hasRemaining())
+            {
+                validEnd += channel.write(unwritten, validEnd);
+            }
+        }
+        finally
+        {
+            pending.flip();
+            pending.position(unwritten.position());
+            pending.compact();
+        }
+        channel.force(false);
+    }
+    // Commits the buffered entries every intervalMillis on a background thread
+    public void startGroupCommit(long intervalMillis)
+    {
+        committer = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "journal-group-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(this::commitQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+    public synchronized long getEntriesSinceCheckpoint()
+    {
+        return entriesSinceCheckpoint;
+    }
+
+    // Replaces the snapshot and starts a fresh journal; the categories are carried over into it
+    public synchronized void checkpoint(SnapshotWriter writer, Map<String, OperationType> categories)
+            throws IOException
+    {
+        Path temporarySnapshot = temporary(snapshot);
+        writer.write(temporarySnapshot);
+
+        // From this marker on the new snapshot is authoritative; categories follow it so they survive
+        endEntry(beginEntry(CHECKPOINT, 0));
+        for (Map.Entry<String, OperationType> category : categories.entrySet())
+        {
+            logAddCategory(category.getKey(), category.getValue());
+        }
+        commit();
+        Files.move(temporarySnapshot, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        startFresh();
+        entriesSinceCheckpoint = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (committer != null)
+        {
+            committer.shutdown();
+        }
+        commit();
+        channel.close();
+    }
+
+    private void logRecord(byte operation, int id, OperationType type, String category, long cents, int epochDay)
+    {
+        byte[] name = category.getBytes(StandardCharsets.UTF_8);
+        int start = beginEntry(operation, 4 + 1 + 4 + 8 + 2 + name.length);
+        pending.putInt(id).put((byte) type.ordinal()).putInt(epochDay).putLong(cents)
+                .putShort((short) name.length).put(name);
+        endEntry(start);
+    }
+    private int beginEntry(byte operation, int payloadLength)
+    {
+        if (pending.remaining() < payloadLength + 9)
+        {
+            commitQuietly();
+            if (pending.remaining() < payloadLength + 9)
+            {
+                // A large entry, or entries a failed commit left behind: they move into a larger buffer
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2,
+                        pending.position() + payloadLength + 9)).order(ByteOrder.LITTLE_ENDIAN);
+                pending.flip();
+                larger.put(pending);
+                pending = larger;
+            }
+        }
+        int start = pending.position();
+        pending.putInt(payloadLength).put(operation);
+        return start;
+    }
+    private void endEntry(int start)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(pending.array(), start + 4, pending.position() - start - 4);
+        pending.putInt((int) crc.getValue());
+        entriesSinceCheckpoint++;
+        if (pending.position() >= GROUP_COMMIT_BYTES)
+        {
+            commitQuietly();
+        }
+    }
+    private void commitQuietly()
+    {
+        try
+        {
+            commit();
+        }
+        catch (IOException e)
+        {
+            // The entries not written stay buffered and are retried by the next commit
+            System.err.println("Error writing the journal: " + e.getMessage());
+        }
+    }
+    private void apply(byte operation, ByteBuffer entry, EntryHandler handler) throws IOException
+    {
+        switch (operation)
+        {
+            case ADD:
+            case UPDATE:
+                int id = entry.getInt();
+                OperationType type = OperationType.values()[entry.get()];
+                int epochDay = entry.getInt();
+                long cents = entry.getLong();
+                handler.apply(operation, id, type, readName(entry), cents, epochDay);
+                break;
+            case REMOVE:
+                handler.apply(operation, entry.getInt(), null, null, 0, 0);
+                break;
+            case ADD_CATEGORY:
+                OperationType categoryType = OperationType.values()[entry.get()];
+                handler.apply(operation, 0, categoryType, readName(entry), 0, 0);
+                break;
+            case CLEAR:
+                handler.apply(operation, 0, null, null, 0, 0);
+                break;
+            default:
+                throw new IOException("Unknown journal operation: " + operation);
+        }
+    }
+    // Finds the end of the intact entries and the last checkpoint; a torn tail is cut off
+    private void scan() throws IOException
+    {
+        ByteBuffer buffer = read();
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+        {
+            throw new IOException("Not a journal file: " + path);
+        }
+        int position = HEADER_SIZE;
+        replayStart = HEADER_SIZE;
+        checkpointIsLast = false;
+        CRC32 crc = new CRC32();
+        while (position + 9 <= buffer.limit())
+        {
+            int length = buffer.getInt(position);
+            if (length < 0 || position + 9L + length > buffer.limit())
+            {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.duplicate().position(position + 4).limit(position + 5 + length));
+            if ((int) crc.getValue() != buffer.getInt(position + 5 + length))
+            {
+                break;
+            }
+            byte operation = buffer.get(position + 4);
+            position += 9 + length;
+            if (operation == CHECKPOINT)
+            {
+                replayStart = position;
+                checkpointIsLast = true;
+            }
+            else if (operation != ADD_CATEGORY)
+            {
+                checkpointIsLast = false;
+            }
+        }
+        validEnd = position;
+        if (validEnd < channel.size())
+        {
+            channel.truncate(validEnd);
+            channel.force(true);
+        }
+    }
+    // Replaces the journal with one holding only the entries after the last checkpoint
+    private void startFresh() throws IOException
+    {
+        ByteBuffer tail = read();
+        tail.limit((int) validEnd).position((int) replayStart);
+        Path temporaryJournal = temporary(path);
+        try (FileChannel fresh = FileChannel.open(temporaryJournal, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ByteBuffer header = header();
+            while (header.hasRemaining())
+            {
+                fresh.write(header);
+            }
+            while (tail.hasRemaining())
+            {
+                fresh.write(tail);
+            }
+            fresh.force(true);
+        }
+        channel.close();
+        Files.move(temporaryJournal, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        scan();
+    }
+    private ByteBuffer read() throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0)
+        {
+        }
+        buffer.flip();
+        return buffer;
+    }
+    private static String readName(ByteBuffer entry)
+    {
+        byte[] name = new byte[entry.getShort() & 0xFFFF];
+        entry.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+    private static ByteBuffer header()
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        return header;
+    }
+    private static Path temporary(Path file)
+    {
+        return Paths.get(file.toString() + ".tmp");
+    }
+}
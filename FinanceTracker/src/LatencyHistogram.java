@@ -0,0 +1,92 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Histogram of durations in nanoseconds with log-linear buckets in the style of HdrHistogram: every power
+// of two is split into 16 buckets, so a percentile is off by at most 1/16 of its value. Recording is
+// one atomic increment per bucket and never locks; values above MAX_VALUE land in the last bucket.
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // About 18 minutes
+    public static final long MAX_VALUE = (1L << 40) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos)
+    {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+    public void reset()
+    {
+        for (int i = 0; i < counts.length(); i++)
+        {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+    public double getMean()
+    {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+    public long getMax()
+    {
+        return max.get();
+    }
+    // Smallest recorded bucket below which the given fraction of the values lie, as the bucket's highest value
+    public long getPercentile(double fraction)
+    {
+        long n = count.sum();
+        if (n == 0)
+        {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++)
+        {
+            seen += counts.get(i);
+            if (seen >= target)
+            {
+                return Math.min(lowestValueOf(i + 1) - 1, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    private static int indexOf(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+    private static long lowestValueOf(int index)
+    {
+        if (index < SUB_BUCKETS)
+        {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+}
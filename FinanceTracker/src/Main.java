@@ -1,11 +1,26 @@
-
+import javax.management.JMException;
 
 public class Main
 {
     public static void main(String[] args)
     {
         FinanceTracker tracker = new FinanceTracker();
+        // An optional ledger file keeps every change in its journal as it is made
+        if (args.length > 0)
+        {
+            tracker.openJournal(args[0]);
+        }
+        // The metrics can be read and switched on over JMX, for example from jconsole
+        try
+        {
+            tracker.getMetrics().register("main");
+        }
+        catch (JMException e)
+        {
+            System.out.println("Error registering the metrics: " + e.getMessage());
+        }
         ConsoleUI ui = new ConsoleUI(tracker);
         ui.start();
+        tracker.closeJournal();
     }
 }
\ No newline at end of file
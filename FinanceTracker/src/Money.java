@@ -0,0 +1,98 @@
+// Fixed-point money: an amount is a long count of minor units (cents) with SCALE decimal places.
+// Sums of minor units are exact, and text is parsed and formatted straight to and from the long,
+// so an amount read from a file or the console never passes through a double.
+public final class Money
+{
+    public static final int SCALE = 2;
+    // Minor units per major unit
+    public static final long UNIT = 100;
+
+    // Longest integer part that cannot overflow once scaled
+    private static final int MAX_INTEGER_DIGITS = 15;
+
+    private Money()
+    {
+    }
+
+    // Converts an amount given as a double, as the older API takes it, rounding to the nearest minor unit
+    public static long fromAmount(double amount)
+    {
+        return Math.round(amount * UNIT);
+    }
+    // Converts minor units to a double for callers that want one; sums should be made in minor units
+    public static double toAmount(long minor)
+    {
+        return minor / (double) UNIT;
+    }
+    // Parses a plain decimal such as "12", "-12.5" or "12,345" into minor units; digits beyond the scale
+    // are rounded half away from zero
+    public static long parse(CharSequence text)
+    {
+        int i = 0;
+        int end = text.length();
+        boolean negative = i < end && text.charAt(i) == '-';
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+        {
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9')
+        {
+            units = units * 10 + (text.charAt(i++) - '0');
+            digits++;
+        }
+        if (digits > MAX_INTEGER_DIGITS)
+        {
+            throw new NumberFormatException("Amount out of range: " + text);
+        }
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < end && (text.charAt(i) == '.' || text.charAt(i) == ','))
+        {
+            i++;
+            while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9')
+            {
+                if (fractionDigits < SCALE)
+                {
+                    fraction = fraction * 10 + (text.charAt(i) - '0');
+                }
+                else if (fractionDigits == SCALE)
+                {
+                    roundUp = text.charAt(i) >= '5';
+                }
+                fractionDigits++;
+                i++;
+            }
+        }
+        if (i != end || digits + fractionDigits == 0)
+        {
+            throw new NumberFormatException("Invalid amount: " + text);
+        }
+        for (int k = fractionDigits; k < SCALE; k++)
+        {
+            fraction *= 10;
+        }
+        long minor = units * UNIT + fraction + (roundUp ? 1 : 0);
+        return negative ? -minor : minor;
+    }
+    // Formats minor units with exactly SCALE decimals and a '.' separator, e.g. "-12.50"
+    public static String format(long minor)
+    {
+        StringBuilder text = new StringBuilder(24);
+        if (minor < 0)
+        {
+            text.append('-');
+        }
+        // Division first, so that Long.MIN_VALUE is not negated
+        text.append(Math.abs(minor / UNIT));
+        String fraction = Long.toString(Math.abs(minor % UNIT));
+        text.append('.');
+        for (int k = fraction.length(); k < SCALE; k++)
+        {
+            text.append('0');
+        }
+        return text.append(fraction).toString();
+    }
+}
@@ -0,0 +1,121 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Sums and counts record amounts per type or per category on a ForkJoinPool. The slots are cut into
+// segments, every task accumulates into its own partial arrays and partials are added up as tasks join,
+// so no two threads ever write to the same array. Fewer rows than the threshold are summed on the calling
+// thread. The store must not change while a sum is running.
+public class ParallelAggregator
+{
+    // Below about a million rows the fork-join overhead outweighs the gain
+    public static final int DEFAULT_THRESHOLD = 1 << 20;
+    private static final int MIN_SEGMENT = 1 << 15;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    public ParallelAggregator(ForkJoinPool pool, int threshold)
+    {
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    public ForkJoinPool getPool()
+    {
+        return pool;
+    }
+    public int getThreshold()
+    {
+        return threshold;
+    }
+    // Whether this many rows are worth splitting
+    public boolean isParallel(int rows)
+    {
+        return rows >= threshold && pool.getParallelism() > 1;
+    }
+    // Adds the amounts and counts of the slots to sums and counts indexed by type ordinal;
+    // null slots stand for every live slot of the store
+    public void sumByType(RecordStore records, int[] slots, long[] sums, long[] counts)
+    {
+        sum(records, slots, false, sums, counts);
+    }
+    // Same as sumByType, indexed by category id
+    public void sumByCategory(RecordStore records, int[] slots, long[] sums, long[] counts)
+    {
+        sum(records, slots, true, sums, counts);
+    }
+
+    private void sum(RecordStore records, int[] slots, boolean byCategory, long[] sums, long[] counts)
+    {
+        int rows = slots != null ? slots.length : records.slotCount();
+        SumTask task = new SumTask(records, slots, byCategory, sums.length, 0, rows,
+                Math.max(MIN_SEGMENT, rows / (pool.getParallelism() * 4)));
+        long[] partial = isParallel(rows) ? pool.invoke(task) : task.accumulate();
+        for (int key = 0; key < sums.length; key++)
+        {
+            sums[key] += partial[key];
+            counts[key] += partial[sums.length + key];
+        }
+    }
+
+    // Sums of the keys followed by their counts, for the rows in [from, to)
+    private static class SumTask extends RecursiveTask<long[]>
+    {
+        // Tasks are never serialized; ForkJoinTask is Serializable only by inheritance
+        private static final long serialVersionUID = 1L;
+
+        private final RecordStore records;
+        private final int[] slots;
+        private final boolean byCategory;
+        private final int keys;
+        private final int from;
+        private final int to;
+        private final int segment;
+
+        SumTask(RecordStore records, int[] slots, boolean byCategory, int keys, int from, int to, int segment)
+        {
+            this.records = records;
+            this.slots = slots;
+            this.byCategory = byCategory;
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+            this.segment = segment;
+        }
+        @Override
+        protected long[] compute()
+        {
+            if (to - from <= segment)
+            {
+                return accumulate();
+            }
+            int middle = (from + to) >>> 1;
+            SumTask left = new SumTask(records, slots, byCategory, keys, from, middle, segment);
+            left.fork();
+            long[] right = new SumTask(records, slots, byCategory, keys, middle, to, segment).compute();
+            long[] result = left.join();
+            for (int i = 0; i < result.length; i++)
+            {
+                result[i] += right[i];
+            }
+            return result;
+        }
+        // Sums the rows on the current thread
+        long[] accumulate()
+        {
+            long[] result = new long[keys * 2];
+            for (int i = from; i < to; i++)
+            {
+                int slot = slots != null ? slots[i] : i;
+                if (slots == null && records.isDeleted(slot))
+                {
+                    continue;
+                }
+                int key = byCategory ? records.getCategoryId(slot) : records.getTypeOrdinal(slot);
+                result[key] += records.getCents(slot);
+                result[keys + key]++;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,556 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+// Ledger stored as one binary ledger file per calendar month plus a manifest with the date range and the
+// sums per category and type of every month. Opening reads only the manifest; a month's records are loaded
+// when a query needs them and the least recently used months are dropped again, so the heap holds
+// the working set rather than the whole history. Months lying entirely inside a queried period
+// are answered from their summaries without loading any records.
+//
+// Manifest layout, little-endian: magic, version, next id, number of months, then per month its key
+// (year * 12 + month - 1), record count, first and last epoch day and number of categories, and per category
+// its UTF-8 name followed by a sum in cents and a count per operation type; CRC32 of everything before it
+public class PartitionedLedger implements AutoCloseable
+{
+    public static final String MANIFEST = "partitions.index";
+    public static final int DEFAULT_LOADED_PARTITIONS = 12;
+
+    private static final int MAGIC = 0x4D505446; // "FTPM"
+    private static final int VERSION = 1;
+    private static final OperationType[] TYPES = OperationType.values();
+
+    // What the manifest knows about one month
+    private static class Partition
+    {
+        final int month;
+        int count;
+        int minDay;
+        int maxDay;
+        // Sums per type ordinal followed by counts per type ordinal, by category name
+        final Map<String, long[]> summary = new TreeMap<>();
+
+        Partition(int month)
+        {
+            this.month = month;
+        }
+        void add(String category, int typeOrdinal, long cents, int epochDay)
+        {
+            minDay = count == 0 ? epochDay : Math.min(minDay, epochDay);
+            maxDay = count == 0 ? epochDay : Math.max(maxDay, epochDay);
+            count++;
+            long[] totals = summary.computeIfAbsent(category, name -> new long[TYPES.length * 2]);
+            totals[typeOrdinal] += cents;
+            totals[TYPES.length + typeOrdinal]++;
+        }
+    }
+
+    private final Path directory;
+    private final int maxLoadedPartitions;
+    private final TreeMap<Integer, Partition> partitions = new TreeMap<>();
+    // Loaded months in access order, the least recently used first
+    private final LinkedHashMap<Integer, FinanceTracker> loaded = new LinkedHashMap<>(16, 0.75f, true);
+    // Loaded months with records that are not written yet
+    private final Set<Integer> dirty = new HashSet<>();
+    // Type every category has been used with, checked across all months
+    private final Map<String, OperationType> categoryTypes = new HashMap<>();
+    private int nextId = 1;
+    private long partitionLoads;
+
+    private PartitionedLedger(Path directory, int maxLoadedPartitions)
+    {
+        if (maxLoadedPartitions < 1)
+        {
+            throw new IllegalArgumentException("At least one partition must fit in memory");
+        }
+        this.directory = directory;
+        this.maxLoadedPartitions = maxLoadedPartitions;
+        this.categoryTypes.putAll(new FinanceTracker().getCategories());
+    }
+
+    // Opens the partitions in the directory, or an empty ledger if it has no manifest yet; only the manifest is read
+    public static PartitionedLedger open(Path directory, int maxLoadedPartitions) throws IOException
+    {
+        PartitionedLedger ledger = new PartitionedLedger(directory, maxLoadedPartitions);
+        Path manifest = directory.resolve(MANIFEST);
+        if (Files.exists(manifest))
+        {
+            ledger.readManifest(manifest);
+        }
+        return ledger;
+    }
+    public static PartitionedLedger open(Path directory) throws IOException
+    {
+        return open(directory, DEFAULT_LOADED_PARTITIONS);
+    }
+    // Splits the live records of the store into monthly partitions in the directory, replacing its manifest.
+    // Slots must be in date order, as returned by DateIndex.allSlots, so that one month is in memory at a time.
+    public static void create(Path directory, RecordStore records, int[] slotsByDate) throws IOException
+    {
+        Files.createDirectories(directory);
+        PartitionedLedger ledger = new PartitionedLedger(directory, 1);
+        CategoryDictionary dictionary = records.getDictionary();
+        for (int from = 0; from < slotsByDate.length; )
+        {
+            int month = monthOf(records.getEpochDay(slotsByDate[from]));
+            Partition partition = new Partition(month);
+            RecordStore monthRecords = new RecordStore();
+            int to = from;
+            for (; to < slotsByDate.length && monthOf(records.getEpochDay(slotsByDate[to])) == month; to++)
+            {
+                int slot = slotsByDate[to];
+                String category = dictionary.nameOf(records.getCategoryId(slot));
+                monthRecords.add(records.getId(slot), records.getType(slot), category,
+                        records.getCents(slot), records.getEpochDay(slot));
+                partition.add(category, records.getTypeOrdinal(slot), records.getCents(slot),
+                        records.getEpochDay(slot));
+                ledger.nextId = Math.max(ledger.nextId, records.getId(slot) + 1);
+            }
+            new BinaryFileHandler().writeLedger(monthRecords, temporary(ledger.pathOf(month)));
+            Files.move(temporary(ledger.pathOf(month)), ledger.pathOf(month),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            ledger.partitions.put(month, partition);
+            from = to;
+        }
+        ledger.writeManifest();
+        ledger.deleteUnlistedPartitions();
+    }
+
+    // Adds a record to its month, loading the month first; the category must keep its type across all months
+    public void addRecord(OperationType type, String category, double amount, LocalDate date)
+    {
+        OperationType expectedType = categoryTypes.get(category);
+        if (expectedType != null && expectedType != type)
+        {
+            throw new IllegalArgumentException(
+                    String.format("The category '%s' must be of type '%s'",
+                    category, expectedType.getRussianName()));
+        }
+        FinancialRecord record = new FinancialRecord(nextId, type, category, amount, date);
+        int epochDay = (int) date.toEpochDay();
+        int month = monthOf(epochDay);
+        Partition partition = partitions.computeIfAbsent(month, Partition::new);
+        FinanceTracker tracker = load(partition);
+        tracker.addRecord(record);
+        partition.add(category, type.ordinal(), record.getCents(), epochDay);
+        categoryTypes.putIfAbsent(category, type);
+        dirty.add(month);
+        nextId++;
+    }
+    // Records of the period in date order; only the months overlapping it are loaded
+    public List<FinancialRecord> getRecordsByDateRange(LocalDate start, LocalDate end)
+    {
+        validateDateRange(start, end);
+        int startDay = toDay(start);
+        int endDay = toDay(end);
+        List<FinancialRecord> result = new ArrayList<>();
+        for (Partition partition : partitions.subMap(monthOf(startDay), true, monthOf(endDay), true).values())
+        {
+            if (overlaps(partition, startDay, endDay))
+            {
+                result.addAll(load(partition).getRecordsByDateRange(
+                        LocalDate.ofEpochDay(startDay), LocalDate.ofEpochDay(endDay)));
+            }
+        }
+        return result;
+    }
+    // Ledger files of the months overlapping the period, oldest first
+    public List<Path> getPartitionFiles(LocalDate start, LocalDate end)
+    {
+        validateDateRange(start, end);
+        int startDay = toDay(start);
+        int endDay = toDay(end);
+        List<Path> files = new ArrayList<>();
+        for (Partition partition : partitions.subMap(monthOf(startDay), true, monthOf(endDay), true).values())
+        {
+            if (overlaps(partition, startDay, endDay))
+            {
+                flushIfDirty(partition.month);
+                files.add(pathOf(partition.month));
+            }
+        }
+        return files;
+    }
+    public Map<String, Double> getStatisticsByCategory(LocalDate start, LocalDate end)
+    {
+        validateDateRange(start, end);
+        Map<String, Double> statistics = new HashMap<>();
+        for (Map.Entry<String, long[]> entry : collect(start, end).entrySet())
+        {
+            long[] totals = entry.getValue();
+            long sum = 0;
+            long count = 0;
+            for (int type = 0; type < TYPES.length; type++)
+            {
+                sum += totals[type];
+                count += totals[TYPES.length + type];
+            }
+            if (count > 0)
+            {
+                statistics.put(entry.getKey(), Money.toAmount(sum));
+            }
+        }
+        return statistics;
+    }
+    public Map<OperationType, Double> getStatisticsByType(LocalDate start, LocalDate end)
+    {
+        validateDateRange(start, end);
+        long[] totals = sumByType(collect(start, end));
+        Map<OperationType, Double> statistics = new EnumMap<>(OperationType.class);
+        for (OperationType type : TYPES)
+        {
+            if (totals[TYPES.length + type.ordinal()] > 0)
+            {
+                statistics.put(type, Money.toAmount(totals[type.ordinal()]));
+            }
+        }
+        return statistics;
+    }
+    public double getBalance(LocalDate start, LocalDate end)
+    {
+        validateDateRange(start, end);
+        long[] totals = sumByType(collect(start, end));
+        return Money.toAmount(totals[OperationType.INCOME.ordinal()] - totals[OperationType.EXPENSE.ordinal()]);
+    }
+    // The whole-ledger totals come from the summaries alone
+    public Map<String, Double> getTotalsByCategory()
+    {
+        return getStatisticsByCategory(LocalDate.MIN, LocalDate.MAX);
+    }
+    public long getTotalIncomeCents()
+    {
+        return sumByType(collect(LocalDate.MIN, LocalDate.MAX))[OperationType.INCOME.ordinal()];
+    }
+    public long getTotalExpensesCents()
+    {
+        return sumByType(collect(LocalDate.MIN, LocalDate.MAX))[OperationType.EXPENSE.ordinal()];
+    }
+    public long getTotalBalanceCents()
+    {
+        return getTotalIncomeCents() - getTotalExpensesCents();
+    }
+    public int getRecordsCount()
+    {
+        int count = 0;
+        for (Partition partition : partitions.values())
+        {
+            count += partition.count;
+        }
+        return count;
+    }
+
+    public int getPartitionCount()
+    {
+        return partitions.size();
+    }
+    public int getLoadedPartitionCount()
+    {
+        return loaded.size();
+    }
+    // Number of times a month was read from disk, including reloads after eviction
+    public long getPartitionLoads()
+    {
+        return partitionLoads;
+    }
+
+    // Writes the changed months and then the manifest. The manifest describes every month, so it is only
+    // written once none of the month files lags behind it.
+    public void flush() throws IOException
+    {
+        // Iterating does not reorder the access-ordered map the way get would
+        for (Map.Entry<Integer, FinanceTracker> entry : loaded.entrySet())
+        {
+            if (dirty.contains(entry.getKey()))
+            {
+                writePartition(entry.getKey(), entry.getValue());
+            }
+        }
+        writeManifest();
+    }
+    @Override
+    public void close() throws IOException
+    {
+        flush();
+        loaded.clear();
+    }
+
+    // Sums and counts per category and type for the period: summaries for the months inside it,
+    // a query over the loaded records for the months it only partly covers
+    private Map<String, long[]> collect(LocalDate start, LocalDate end)
+    {
+        int startDay = toDay(start);
+        int endDay = toDay(end);
+        Map<String, long[]> result = new HashMap<>();
+        for (Partition partition : partitions.values())
+        {
+            if (!overlaps(partition, startDay, endDay))
+            {
+                continue;
+            }
+            if (partition.minDay >= startDay && partition.maxDay <= endDay)
+            {
+                for (Map.Entry<String, long[]> entry : partition.summary.entrySet())
+                {
+                    long[] totals = result.computeIfAbsent(entry.getKey(), name -> new long[TYPES.length * 2]);
+                    for (int i = 0; i < totals.length; i++)
+                    {
+                        totals[i] += entry.getValue()[i];
+                    }
+                }
+                continue;
+            }
+            RecordQuery query = new RecordQuery()
+                    .between(LocalDate.ofEpochDay(startDay), LocalDate.ofEpochDay(endDay))
+                    .groupBy(RecordQuery.GroupBy.CATEGORY, RecordQuery.GroupBy.TYPE);
+            for (QueryResult.Row row : load(partition).query(query).getRows())
+            {
+                long[] totals = result.computeIfAbsent((String) row.getKey(0), name -> new long[TYPES.length * 2]);
+                int type = ((OperationType) row.getKey(1)).ordinal();
+                totals[type] += row.getSumCents();
+                totals[TYPES.length + type] += row.getCount();
+            }
+        }
+        return result;
+    }
+    private static long[] sumByType(Map<String, long[]> byCategory)
+    {
+        long[] result = new long[TYPES.length * 2];
+        for (long[] totals : byCategory.values())
+        {
+            for (int i = 0; i < result.length; i++)
+            {
+                result[i] += totals[i];
+            }
+        }
+        return result;
+    }
+    // Returns the tracker of the month, reading it on a miss and evicting the least recently used months
+    private FinanceTracker load(Partition partition)
+    {
+        FinanceTracker tracker = loaded.get(partition.month);
+        if (tracker != null)
+        {
+            return tracker;
+        }
+        tracker = new FinanceTracker();
+        Path path = pathOf(partition.month);
+        try
+        {
+            // A month without records has no file of its own; a file left there by an older layout is not read
+            if (partition.count > 0)
+            {
+                tracker.readLedger(path);
+                partitionLoads++;
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Error reading the partition " + path.getFileName(), e);
+        }
+        loaded.put(partition.month, tracker);
+        while (loaded.size() > maxLoadedPartitions)
+        {
+            // A get would reorder the access-ordered map, so the eldest entry is taken from its iterator
+            Map.Entry<Integer, FinanceTracker> eldest = loaded.entrySet().iterator().next();
+            flushIfDirty(eldest.getKey());
+            loaded.remove(eldest.getKey());
+        }
+        return tracker;
+    }
+    // Before a changed month leaves memory or its file is handed out, all changed months are written with
+    // the manifest, which would otherwise list the counts and summaries of months missing from disk
+    private void flushIfDirty(int month)
+    {
+        if (!dirty.contains(month))
+        {
+            return;
+        }
+        try
+        {
+            flush();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Error writing the partitions in " + directory, e);
+        }
+    }
+    private void writePartition(int month, FinanceTracker tracker) throws IOException
+    {
+        Path path = pathOf(month);
+        tracker.writeLedger(temporary(path));
+        Files.move(temporary(path), path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty.remove(month);
+    }
+    // Deletes the month files of an earlier layout that the manifest no longer lists
+    private void deleteUnlistedPartitions() throws IOException
+    {
+        List<Path> stale = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + BinaryFileHandler.EXTENSION))
+        {
+            for (Path file : files)
+            {
+                String name = file.getFileName().toString();
+                try
+                {
+                    YearMonth month = YearMonth.parse(
+                            name.substring(0, name.length() - BinaryFileHandler.EXTENSION.length()));
+                    if (!partitions.containsKey(month.getYear() * 12 + month.getMonthValue() - 1))
+                    {
+                        stale.add(file);
+                    }
+                }
+                catch (DateTimeParseException e)
+                {
+                    // Not a month file
+                }
+            }
+        }
+        for (Path file : stale)
+        {
+            Files.deleteIfExists(file);
+        }
+    }
+    private void writeManifest() throws IOException
+    {
+        List<byte[]> names = new ArrayList<>();
+        int size = 16 + 4;
+        for (Partition partition : partitions.values())
+        {
+            size += 20;
+            for (String category : partition.summary.keySet())
+            {
+                byte[] name = category.getBytes(StandardCharsets.UTF_8);
+                names.add(name);
+                size += 4 + name.length + TYPES.length * 16;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(nextId).putInt(partitions.size());
+        Iterator<byte[]> name = names.iterator();
+        for (Partition partition : partitions.values())
+        {
+            buffer.putInt(partition.month).putInt(partition.count).putInt(partition.minDay)
+                    .putInt(partition.maxDay).putInt(partition.summary.size());
+            for (long[] totals : partition.summary.values())
+            {
+                byte[] bytes = name.next();
+                buffer.putInt(bytes.length).put(bytes);
+                for (int type = 0; type < TYPES.length; type++)
+                {
+                    buffer.putLong(totals[type]).putLong(totals[TYPES.length + type]);
+                }
+            }
+        }
+        buffer.putInt(checksum(buffer.array(), buffer.position()));
+
+        Path manifest = directory.resolve(MANIFEST);
+        Files.write(temporary(manifest), buffer.array());
+        Files.move(temporary(manifest), manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    private void readManifest(Path manifest) throws IOException
+    {
+        byte[] bytes = Files.readAllBytes(manifest);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length < 20 || buffer.getInt(bytes.length - 4) != checksum(bytes, bytes.length - 4))
+        {
+            throw new IOException("The partition manifest is corrupted");
+        }
+        if (buffer.getInt() != MAGIC)
+        {
+            throw new IOException("Not a partition manifest: " + manifest);
+        }
+        if (buffer.getInt() != VERSION)
+        {
+            throw new IOException("Unsupported manifest version: " + buffer.getInt(4));
+        }
+        nextId = buffer.getInt();
+        int partitionCount = buffer.getInt();
+        for (int i = 0; i < partitionCount; i++)
+        {
+            Partition partition = new Partition(buffer.getInt());
+            partition.count = buffer.getInt();
+            partition.minDay = buffer.getInt();
+            partition.maxDay = buffer.getInt();
+            int categoryCount = buffer.getInt();
+            for (int c = 0; c < categoryCount; c++)
+            {
+                byte[] name = new byte[buffer.getInt()];
+                buffer.get(name);
+                String category = new String(name, StandardCharsets.UTF_8);
+                long[] totals = new long[TYPES.length * 2];
+                for (int type = 0; type < TYPES.length; type++)
+                {
+                    totals[type] = buffer.getLong();
+                    totals[TYPES.length + type] = buffer.getLong();
+                    if (totals[TYPES.length + type] > 0)
+                    {
+                        categoryTypes.putIfAbsent(category, TYPES[type]);
+                    }
+                }
+                partition.summary.put(category, totals);
+            }
+            partitions.put(partition.month, partition);
+        }
+    }
+    private Path pathOf(int month)
+    {
+        return directory.resolve(YearMonth.of(Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1)
+                + BinaryFileHandler.EXTENSION);
+    }
+    private static int monthOf(int epochDay)
+    {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+    // Epoch day clamped to the int range of the stored days, so that LocalDate.MIN and MAX work as open bounds
+    private static int toDay(LocalDate date)
+    {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, date.toEpochDay()));
+    }
+    private static boolean overlaps(Partition partition, int startDay, int endDay)
+    {
+        return partition.count > 0 && partition.maxDay >= startDay && partition.minDay <= endDay;
+    }
+    private static void validateDateRange(LocalDate start, LocalDate end)
+    {
+        if (start == null || end == null)
+        {
+            throw new IllegalArgumentException("Dates cannot be null");
+        }
+        if (start.isAfter(end))
+        {
+            throw new IllegalArgumentException("The start date cannot be after the end date");
+        }
+    }
+    private static int checksum(byte[] bytes, int length)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+    private static Path temporary(Path file)
+    {
+        return Paths.get(file.toString() + ".tmp");
+    }
+}
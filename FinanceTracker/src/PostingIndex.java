@@ -0,0 +1,72 @@
+import java.util.Arrays;
+
+// Inverted lists of the live record slots of every category id and every operation type.
+// A lookup touches only the matching slots, and filters combine by intersecting the lists.
+public class PostingIndex
+{
+    private static final SlotBitmap EMPTY = new SlotBitmap();
+
+    private SlotBitmap[] byCategory = new SlotBitmap[16];
+    private final SlotBitmap[] byType = new SlotBitmap[OperationType.values().length];
+
+    public PostingIndex()
+    {
+        for (int type = 0; type < byType.length; type++)
+        {
+            byType[type] = new SlotBitmap();
+        }
+    }
+
+    public void add(int slot, int categoryId, int typeOrdinal)
+    {
+        if (categoryId >= byCategory.length)
+        {
+            byCategory = Arrays.copyOf(byCategory, Math.max(categoryId + 1, byCategory.length * 2));
+        }
+        if (byCategory[categoryId] == null)
+        {
+            byCategory[categoryId] = new SlotBitmap();
+        }
+        byCategory[categoryId].add(slot);
+        byType[typeOrdinal].add(slot);
+    }
+    public void remove(int slot, int categoryId, int typeOrdinal)
+    {
+        if (categoryId < byCategory.length && byCategory[categoryId] != null)
+        {
+            byCategory[categoryId].remove(slot);
+        }
+        byType[typeOrdinal].remove(slot);
+    }
+    // Slots of the category id; the returned set must not be modified
+    public SlotBitmap category(int categoryId)
+    {
+        return categoryId < byCategory.length && byCategory[categoryId] != null ? byCategory[categoryId] : EMPTY;
+    }
+    // Slots of the categories flagged in the array, as a new set
+    public SlotBitmap categories(boolean[] categoryIds)
+    {
+        SlotBitmap result = new SlotBitmap();
+        for (int id = 0; id < categoryIds.length; id++)
+        {
+            if (categoryIds[id] && category(id).cardinality() > 0)
+            {
+                result = SlotBitmap.or(result, category(id));
+            }
+        }
+        return result;
+    }
+    // Slots of the type; the returned set must not be modified
+    public SlotBitmap type(int typeOrdinal)
+    {
+        return byType[typeOrdinal];
+    }
+    public void clear()
+    {
+        Arrays.fill(byCategory, null);
+        for (SlotBitmap slots : byType)
+        {
+            slots.clear();
+        }
+    }
+}
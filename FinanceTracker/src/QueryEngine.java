@@ -0,0 +1,290 @@
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Plans and runs RecordQuery aggregations over the columns of a RecordStore. The planner starts from the
+// access path that yields the fewest candidate records - the date index, the category and type posting
+// lists, or a scan of the whole store - and the remaining filters and the grouping are fused into one pass
+// over the candidates. Filters already guaranteed by the access path are not checked again.
+public class QueryEngine
+{
+    public enum AccessPath
+    {
+        DATE_INDEX,
+        POSTING_LISTS,
+        FULL_SCAN
+    }
+
+    // Candidates per parallel task
+    private static final int PARALLEL_CHUNK = 1 << 16;
+
+    private final RecordStore records;
+    private final DateIndex dateIndex;
+    private final PostingIndex postings;
+    private final CategoryRegistry categories;
+    // Pool and size threshold of the tracker's parallel mode, null when it is off
+    private ParallelAggregator parallelAggregator;
+
+    // Access path and residual filters chosen for a query
+    private static class Plan
+    {
+        AccessPath accessPath;
+        // Candidate slots, or null to scan every slot of the store
+        int[] slots;
+        RecordQuery.GroupBy[] groupBy;
+        boolean checkDate;
+        boolean checkCategory;
+        boolean checkType;
+        int startDay;
+        int endDay;
+        boolean[] categoryMatches;
+        int typeOrdinal;
+        long minCents;
+        long maxCents;
+    }
+
+    // Splits the candidates in halves down to PARALLEL_CHUNK and merges the partial tables
+    private class AggregateTask extends RecursiveTask<GroupTable>
+    {
+        // Tasks are never serialized; ForkJoinTask is Serializable only by inheritance
+        private static final long serialVersionUID = 1L;
+
+        private final Plan plan;
+        private final int from;
+        private final int to;
+
+        AggregateTask(Plan plan, int from, int to)
+        {
+            this.plan = plan;
+            this.from = from;
+            this.to = to;
+        }
+        @Override
+        protected GroupTable compute()
+        {
+            if (to - from <= PARALLEL_CHUNK)
+            {
+                return aggregate(plan, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            AggregateTask left = new AggregateTask(plan, from, middle);
+            left.fork();
+            GroupTable result = new AggregateTask(plan, middle, to).compute();
+            GroupTable leftResult = left.join();
+            leftResult.merge(result);
+            return leftResult;
+        }
+    }
+
+    public QueryEngine(RecordStore records, DateIndex dateIndex, PostingIndex postings, CategoryRegistry categories)
+    {
+        this.records = records;
+        this.dateIndex = dateIndex;
+        this.postings = postings;
+        this.categories = categories;
+    }
+
+    // Runs every query over enough candidates in parallel, not only those asking for it; null turns it off
+    public void setParallelAggregation(ParallelAggregator parallelAggregator)
+    {
+        this.parallelAggregator = parallelAggregator;
+    }
+    public QueryResult run(RecordQuery query)
+    {
+        Plan plan = plan(query);
+        int candidates = plan.slots != null ? plan.slots.length : records.slotCount();
+        boolean parallel = query.isParallel()
+                ? candidates > PARALLEL_CHUNK
+                : parallelAggregator != null && parallelAggregator.isParallel(candidates);
+        ForkJoinPool pool = parallelAggregator != null ? parallelAggregator.getPool() : ForkJoinPool.commonPool();
+        GroupTable table = parallel
+                ? pool.invoke(new AggregateTask(plan, 0, candidates))
+                : aggregate(plan, 0, candidates);
+        return toResult(plan, table, plan.slots != null ? plan.slots.length : records.size());
+    }
+
+    // Chooses the access path and the residual filters
+    private Plan plan(RecordQuery query)
+    {
+        Plan plan = new Plan();
+        plan.groupBy = query.getGroupBy().toArray(new RecordQuery.GroupBy[0]);
+        plan.minCents = query.getMinCents();
+        plan.maxCents = query.getMaxCents();
+
+        SlotBitmap categorySlots = null;
+        if (!query.getCategories().isEmpty())
+        {
+            plan.categoryMatches = new boolean[records.getDictionary().size()];
+            for (String category : query.getCategories())
+            {
+                boolean[] matches = categories.matchIgnoreCase(category);
+                for (int id = 0; id < matches.length; id++)
+                {
+                    plan.categoryMatches[id] |= matches[id];
+                }
+            }
+            categorySlots = postings.categories(plan.categoryMatches);
+        }
+        SlotBitmap typeSlots = query.getType() == null ? null : postings.type(query.getType().ordinal());
+        plan.typeOrdinal = query.getType() == null ? -1 : query.getType().ordinal();
+        if (query.getStart() != null)
+        {
+            plan.startDay = (int) query.getStart().toEpochDay();
+            plan.endDay = (int) query.getEnd().toEpochDay();
+        }
+
+        // Estimated candidates of every access path
+        long dateCost = query.getStart() == null ? Long.MAX_VALUE : dateIndex.estimateInRange(plan.startDay, plan.endDay);
+        long postingCost = Math.min(categorySlots == null ? Long.MAX_VALUE : categorySlots.cardinality(),
+                typeSlots == null ? Long.MAX_VALUE : typeSlots.cardinality());
+        long scanCost = records.slotCount();
+
+        if (dateCost <= postingCost && dateCost <= scanCost)
+        {
+            plan.accessPath = AccessPath.DATE_INDEX;
+            plan.slots = dateIndex.slotsInRange(plan.startDay, plan.endDay);
+            plan.checkDate = false;
+            plan.checkCategory = categorySlots != null;
+            plan.checkType = typeSlots != null;
+        }
+        else if (postingCost < scanCost)
+        {
+            plan.accessPath = AccessPath.POSTING_LISTS;
+            SlotBitmap slots = categorySlots == null ? typeSlots
+                    : typeSlots == null ? categorySlots : SlotBitmap.and(categorySlots, typeSlots);
+            plan.slots = slots.toArray();
+            plan.checkDate = query.getStart() != null;
+        }
+        else
+        {
+            plan.accessPath = AccessPath.FULL_SCAN;
+            plan.checkDate = query.getStart() != null;
+            plan.checkCategory = categorySlots != null;
+            plan.checkType = typeSlots != null;
+        }
+        return plan;
+    }
+    // The fused pass: filters and groups the candidates in [from, to)
+    private GroupTable aggregate(Plan plan, int from, int to)
+    {
+        RecordQuery.GroupBy[] groupBy = plan.groupBy;
+        GroupTable table = new GroupTable(groupBy.length);
+        int[] key = new int[groupBy.length];
+        // The month of the last record: records arrive roughly in date order on every access path
+        int monthStart = 0;
+        int monthEnd = -1;
+        int month = 0;
+        boolean checkAmount = plan.minCents != Long.MIN_VALUE || plan.maxCents != Long.MAX_VALUE;
+        for (int i = from; i < to; i++)
+        {
+            int slot;
+            if (plan.slots != null)
+            {
+                slot = plan.slots[i];
+            }
+            else if (!records.isDeleted(i))
+            {
+                slot = i;
+            }
+            else
+            {
+                continue;
+            }
+            int day = records.getEpochDay(slot);
+            long cents = records.getCents(slot);
+            if (plan.checkDate && (day < plan.startDay || day > plan.endDay)
+                    || plan.checkType && records.getTypeOrdinal(slot) != plan.typeOrdinal
+                    || plan.checkCategory && !plan.categoryMatches[records.getCategoryId(slot)]
+                    || checkAmount && (cents < plan.minCents || cents > plan.maxCents))
+            {
+                continue;
+            }
+            for (int k = 0; k < groupBy.length; k++)
+            {
+                switch (groupBy[k])
+                {
+                    case CATEGORY:
+                        key[k] = records.getCategoryId(slot);
+                        break;
+                    case TYPE:
+                        key[k] = records.getTypeOrdinal(slot);
+                        break;
+                    case DAY:
+                        key[k] = day;
+                        break;
+                    case WEEK:
+                        // 1970-01-01 was a Thursday
+                        key[k] = day - Math.floorMod(day + 3, 7);
+                        break;
+                    case MONTH:
+                    case YEAR:
+                        if (day < monthStart || day > monthEnd)
+                        {
+                            LocalDate first = LocalDate.ofEpochDay(day).withDayOfMonth(1);
+                            monthStart = (int) first.toEpochDay();
+                            monthEnd = monthStart + first.lengthOfMonth() - 1;
+                            month = first.getYear() * 12 + first.getMonthValue() - 1;
+                        }
+                        key[k] = groupBy[k] == RecordQuery.GroupBy.MONTH ? month : Math.floorDiv(month, 12);
+                        break;
+                }
+            }
+            table.add(key, cents);
+        }
+        return table;
+    }
+    private QueryResult toResult(Plan plan, GroupTable table, long scannedRows)
+    {
+        List<QueryResult.Row> rows = new ArrayList<>(table.size());
+        for (int group = 0; group < table.size(); group++)
+        {
+            List<Object> keys = new ArrayList<>(plan.groupBy.length);
+            for (int k = 0; k < plan.groupBy.length; k++)
+            {
+                keys.add(decode(plan.groupBy[k], table.getKey(group, k)));
+            }
+            rows.add(new QueryResult.Row(keys, table.getSum(group), table.getCount(group),
+                    table.getMin(group), table.getMax(group)));
+        }
+        if (plan.groupBy.length == 0 && rows.isEmpty())
+        {
+            // Without grouping there is always exactly one row
+            rows.add(new QueryResult.Row(new ArrayList<>(), 0, 0, 0, 0));
+        }
+        rows.sort(QueryEngine::compareKeys);
+        return new QueryResult(rows, plan.accessPath, scannedRows);
+    }
+    private Object decode(RecordQuery.GroupBy groupBy, int key)
+    {
+        switch (groupBy)
+        {
+            case CATEGORY:
+                return records.getDictionary().nameOf(key);
+            case TYPE:
+                return OperationType.values()[key];
+            case MONTH:
+                return YearMonth.of(Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1);
+            case YEAR:
+                return Year.of(key);
+            default:
+                return LocalDate.ofEpochDay(key);
+        }
+    }
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareKeys(QueryResult.Row a, QueryResult.Row b)
+    {
+        for (int k = 0; k < a.getKeys().size(); k++)
+        {
+            int result = ((Comparable) a.getKey(k)).compareTo(b.getKey(k));
+            if (result != 0)
+            {
+                return result;
+            }
+        }
+        return 0;
+    }
+}
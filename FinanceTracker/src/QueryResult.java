@@ -0,0 +1,102 @@
+import java.util.Collections;
+import java.util.List;
+
+// Rows of a RecordQuery, one per group in ascending key order, plus how the query was executed
+public class QueryResult
+{
+    public static class Row
+    {
+        private final List<Object> keys;
+        private final long sumCents;
+        private final long count;
+        private final long minCents;
+        private final long maxCents;
+
+        public Row(List<Object> keys, long sumCents, long count, long minCents, long maxCents)
+        {
+            this.keys = Collections.unmodifiableList(keys);
+            this.sumCents = sumCents;
+            this.count = count;
+            this.minCents = minCents;
+            this.maxCents = maxCents;
+        }
+
+        // Group keys in RecordQuery.groupBy order: a String for CATEGORY, an OperationType for TYPE,
+        // a LocalDate for DAY and WEEK, a YearMonth for MONTH and a Year for YEAR
+        public List<Object> getKeys()
+        {
+            return keys;
+        }
+        public Object getKey(int position)
+        {
+            return keys.get(position);
+        }
+        public double getSum()
+        {
+            return Money.toAmount(sumCents);
+        }
+        public long getSumCents()
+        {
+            return sumCents;
+        }
+        public long getCount()
+        {
+            return count;
+        }
+        // Min, max and average are NaN for an empty group
+        public double getMin()
+        {
+            return count == 0 ? Double.NaN : Money.toAmount(minCents);
+        }
+        public double getMax()
+        {
+            return count == 0 ? Double.NaN : Money.toAmount(maxCents);
+        }
+        // Min and max in minor units; 0 for an empty group
+        public long getMinCents()
+        {
+            return count == 0 ? 0 : minCents;
+        }
+        public long getMaxCents()
+        {
+            return count == 0 ? 0 : maxCents;
+        }
+        public double getAverage()
+        {
+            return count == 0 ? Double.NaN : Money.toAmount(sumCents) / count;
+        }
+        @Override
+        public String toString()
+        {
+            return String.format("%s: sum=%s, count=%d, min=%s, max=%s, avg=%.2f", keys, Money.format(sumCents),
+                    count, count == 0 ? "-" : Money.format(minCents), count == 0 ? "-" : Money.format(maxCents),
+                    getAverage());
+        }
+    }
+
+    private final List<Row> rows;
+    private final QueryEngine.AccessPath accessPath;
+    private final long scannedRows;
+
+    public QueryResult(List<Row> rows, QueryEngine.AccessPath accessPath, long scannedRows)
+    {
+        this.rows = Collections.unmodifiableList(rows);
+        this.accessPath = accessPath;
+        this.scannedRows = scannedRows;
+    }
+
+    public List<Row> getRows()
+    {
+        return rows;
+    }
+    // Where the planner started: the date index, the posting lists or a scan of the whole store
+    public QueryEngine.AccessPath getAccessPath()
+    {
+        return accessPath;
+    }
+    // Number of records the chosen access path handed to the filters
+    public long getScannedRows()
+    {
+        return scannedRows;
+    }
+}
@@ -0,0 +1,114 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// Growable columnar batch of records with its own category dictionary.
+// Loaders fill it through accept(); programmatic feeds use the add methods, whose records
+// may leave the id to be assigned when the batch is added to a FinanceTracker.
+public class RecordBatch implements RecordSink
+{
+    // Id of a record that gets the next id of the tracker it is added to
+    private static final int NO_ID = Integer.MIN_VALUE;
+
+    private final CategoryDictionary dictionary = new CategoryDictionary();
+    private int[] ids = new int[64];
+    private byte[] types = new byte[64];
+    private int[] categories = new int[64];
+    private long[] amounts = new long[64];
+    private int[] dates = new int[64];
+    private int size;
+    private int unassignedIds;
+
+    // Appends a record whose category id refers to this batch's dictionary
+    @Override
+    public void accept(int id, OperationType type, int categoryId, long cents, int epochDay)
+    {
+        if (size == ids.length)
+        {
+            int newCapacity = size * 2;
+            ids = Arrays.copyOf(ids, newCapacity);
+            types = Arrays.copyOf(types, newCapacity);
+            categories = Arrays.copyOf(categories, newCapacity);
+            amounts = Arrays.copyOf(amounts, newCapacity);
+            dates = Arrays.copyOf(dates, newCapacity);
+        }
+        ids[size] = id;
+        types[size] = (byte) type.ordinal();
+        categories[size] = categoryId;
+        amounts[size] = cents;
+        dates[size] = epochDay;
+        size++;
+    }
+    // Appends a new record; like FinanceTracker.addRecord its category must match the category's type
+    public RecordBatch add(OperationType type, String category, double amount, LocalDate date)
+    {
+        accept(NO_ID, type, dictionary.idOf(category), Money.fromAmount(amount), (int) date.toEpochDay());
+        unassignedIds++;
+        return this;
+    }
+    // Appends an existing record with its own id
+    public RecordBatch add(FinancialRecord record)
+    {
+        accept(record.getId(), record.getType(), dictionary.idOf(record.getCategory()),
+                record.getCents(), (int) record.getDate().toEpochDay());
+        return this;
+    }
+    // Passes every record to the sink, translating category ids into the target dictionary
+    public void forEach(CategoryDictionary target, RecordSink sink)
+    {
+        forEach(target, NO_ID, sink);
+    }
+    // Same as forEach(target, sink), numbering the records added without an id from firstId on
+    public void forEach(CategoryDictionary target, int firstId, RecordSink sink)
+    {
+        int[] mapping = new int[dictionary.size()];
+        for (int id = 0; id < mapping.length; id++)
+        {
+            mapping[id] = target.idOf(dictionary.nameOf(id));
+        }
+        OperationType[] typeValues = OperationType.values();
+        int nextId = firstId;
+        for (int i = 0; i < size; i++)
+        {
+            int id = ids[i] != NO_ID ? ids[i] : nextId++;
+            sink.accept(id, typeValues[types[i]], mapping[categories[i]], amounts[i], dates[i]);
+        }
+    }
+
+    public int size()
+    {
+        return size;
+    }
+    // Number of records that were added without an id
+    public int unassignedIds()
+    {
+        return unassignedIds;
+    }
+    public boolean hasId(int index)
+    {
+        return ids[index] != NO_ID;
+    }
+    public int getId(int index)
+    {
+        return ids[index];
+    }
+    public OperationType getType(int index)
+    {
+        return OperationType.values()[types[index]];
+    }
+    public int getCategoryId(int index)
+    {
+        return categories[index];
+    }
+    public long getCents(int index)
+    {
+        return amounts[index];
+    }
+    public int getEpochDay(int index)
+    {
+        return dates[index];
+    }
+    public CategoryDictionary getDictionary()
+    {
+        return dictionary;
+    }
+}
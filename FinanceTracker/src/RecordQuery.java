@@ -0,0 +1,117 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Description of an aggregation over the records for FinanceTracker.query: optional filters combined with AND,
+// optional group-by keys, and sum, count, min, max and average computed for every group. For example
+// "expenses in Food of at least 100 in Q3, by month":
+//   new RecordQuery().type(OperationType.EXPENSE).category("Food").minAmount(100)
+//           .between(LocalDate.of(2024, 7, 1), LocalDate.of(2024, 9, 30)).groupBy(RecordQuery.GroupBy.MONTH)
+public class RecordQuery
+{
+    public enum GroupBy
+    {
+        CATEGORY,
+        TYPE,
+        DAY,
+        // Weeks start on Monday and are keyed by that day
+        WEEK,
+        MONTH,
+        YEAR
+    }
+
+    private final List<String> categories = new ArrayList<>();
+    private OperationType type;
+    private LocalDate start;
+    private LocalDate end;
+    private long minCents = Long.MIN_VALUE;
+    private long maxCents = Long.MAX_VALUE;
+    private final List<GroupBy> groupBy = new ArrayList<>();
+    private boolean parallel;
+
+    // Keeps records of any of the categories, ignoring case
+    public RecordQuery category(String... names)
+    {
+        categories.addAll(Arrays.asList(names));
+        return this;
+    }
+    public RecordQuery type(OperationType type)
+    {
+        this.type = type;
+        return this;
+    }
+    // Keeps records dated from start to end inclusive
+    public RecordQuery between(LocalDate start, LocalDate end)
+    {
+        if (start == null || end == null)
+        {
+            throw new IllegalArgumentException("Dates cannot be null");
+        }
+        if (start.isAfter(end))
+        {
+            throw new IllegalArgumentException("The start date cannot be after the end date");
+        }
+        this.start = start;
+        this.end = end;
+        return this;
+    }
+    // Keeps records with an amount of at least the given one
+    public RecordQuery minAmount(double amount)
+    {
+        this.minCents = Money.fromAmount(amount);
+        return this;
+    }
+    // Keeps records with an amount of at most the given one
+    public RecordQuery maxAmount(double amount)
+    {
+        this.maxCents = Money.fromAmount(amount);
+        return this;
+    }
+    // Groups by the keys in the given order; without keys the whole selection is one group
+    public RecordQuery groupBy(GroupBy... keys)
+    {
+        groupBy.addAll(Arrays.asList(keys));
+        return this;
+    }
+    // Runs the aggregation on all cores when the selection is large
+    public RecordQuery parallel(boolean parallel)
+    {
+        this.parallel = parallel;
+        return this;
+    }
+
+    public List<String> getCategories()
+    {
+        return Collections.unmodifiableList(categories);
+    }
+    public OperationType getType()
+    {
+        return type;
+    }
+    public LocalDate getStart()
+    {
+        return start;
+    }
+    public LocalDate getEnd()
+    {
+        return end;
+    }
+    public long getMinCents()
+    {
+        return minCents;
+    }
+    public long getMaxCents()
+    {
+        return maxCents;
+    }
+    public List<GroupBy> getGroupBy()
+    {
+        return Collections.unmodifiableList(groupBy);
+    }
+    public boolean isParallel()
+    {
+        return parallel;
+    }
+}
@@ -0,0 +1,5 @@
+// Receives parsed records field by field, without building FinancialRecord objects
+public interface RecordSink
+{
+    void accept(int id, OperationType type, int categoryId, long cents, int epochDay);
+}
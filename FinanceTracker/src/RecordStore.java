@@ -0,0 +1,240 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// Column-oriented storage of financial records: one primitive array per field
+public class RecordStore
+{
+    private static final int INITIAL_CAPACITY = 16;
+    private static final OperationType[] TYPES = OperationType.values();
+    // Type marker of a deleted slot; its amount is zeroed as well so that totals can skip the check
+    private static final byte TOMBSTONE = -1;
+    private static final int MIN_TOMBSTONES_TO_COMPACT = 1024;
+
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] dates = new int[INITIAL_CAPACITY];
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private long[] amounts = new long[INITIAL_CAPACITY];
+    private int[] categories = new int[INITIAL_CAPACITY];
+    // Previous slot holding the same id, or -1; ids are not guaranteed to be unique
+    private int[] sameIdPrevious = new int[INITIAL_CAPACITY];
+    private int slotCount;
+    private int tombstones;
+
+    // Newest slot of every id
+    private final IntIntHashMap idIndex = new IntIntHashMap();
+
+    private final CategoryDictionary dictionary = new CategoryDictionary();
+
+    // Appends a record and returns its slot
+    public int add(int id, OperationType type, String category, long cents, int epochDay)
+    {
+        return add(id, type, dictionary.idOf(category), cents, epochDay);
+    }
+    // Appends a record whose category is already encoded by this store's dictionary
+    public int add(int id, OperationType type, int categoryId, long cents, int epochDay)
+    {
+        ensureCapacity(slotCount + 1);
+        int slot = slotCount++;
+        ids[slot] = id;
+        sameIdPrevious[slot] = idIndex.get(id, -1);
+        idIndex.put(id, slot);
+        types[slot] = (byte) type.ordinal();
+        categories[slot] = categoryId;
+        amounts[slot] = cents;
+        dates[slot] = epochDay;
+        return slot;
+    }
+    public int add(FinancialRecord record)
+    {
+        return add(record.getId(), record.getType(), record.getCategory(),
+                record.getCents(), (int) record.getDate().toEpochDay());
+    }
+    // Grows the storage once for that many more records
+    public void reserve(int additional)
+    {
+        ensureCapacity(slotCount + additional);
+        idIndex.ensureCapacity(idIndex.size() + additional);
+    }
+    // Overwrites every field of the slot except the id
+    public void set(int slot, OperationType type, String category, long cents, int epochDay)
+    {
+        types[slot] = (byte) type.ordinal();
+        categories[slot] = dictionary.idOf(category);
+        amounts[slot] = cents;
+        dates[slot] = epochDay;
+    }
+    // Marks the slot as deleted; the space is reclaimed by compact()
+    public void remove(int slot)
+    {
+        unlinkId(slot);
+        types[slot] = TOMBSTONE;
+        amounts[slot] = 0;
+        tombstones++;
+    }
+    public void clear()
+    {
+        slotCount = 0;
+        tombstones = 0;
+        idIndex.clear();
+    }
+    public boolean isDeleted(int slot)
+    {
+        return types[slot] == TOMBSTONE;
+    }
+    // Returns the newest slot holding the id or -1
+    public int findLatestSlot(int id)
+    {
+        return idIndex.get(id, -1);
+    }
+    // Returns the next older slot holding the same id as the slot or -1
+    public int findPreviousSlot(int slot)
+    {
+        return sameIdPrevious[slot];
+    }
+    // Returns the oldest slot holding the id or -1
+    public int findSlot(int id)
+    {
+        int slot = idIndex.get(id, -1);
+        while (slot >= 0 && sameIdPrevious[slot] >= 0)
+        {
+            slot = sameIdPrevious[slot];
+        }
+        return slot;
+    }
+    // True once deleted slots make up more than half of the storage
+    public boolean needsCompaction()
+    {
+        return tombstones >= MIN_TOMBSTONES_TO_COMPACT && tombstones * 2 > slotCount;
+    }
+    // Moves the live records down over the deleted slots and returns the old-to-new slot mapping
+    public int[] compact()
+    {
+        int[] remap = new int[slotCount];
+        int target = 0;
+        idIndex.clear();
+        for (int slot = 0; slot < slotCount; slot++)
+        {
+            if (isDeleted(slot))
+            {
+                remap[slot] = -1;
+                continue;
+            }
+            remap[slot] = target;
+            ids[target] = ids[slot];
+            dates[target] = dates[slot];
+            types[target] = types[slot];
+            amounts[target] = amounts[slot];
+            categories[target] = categories[slot];
+            sameIdPrevious[target] = idIndex.get(ids[target], -1);
+            idIndex.put(ids[target], target);
+            target++;
+        }
+        slotCount = target;
+        tombstones = 0;
+        return remap;
+    }
+    // Copy of the live records in storage order with the same category ids, for example to write
+    // a consistent snapshot while this store keeps changing
+    public RecordStore copy()
+    {
+        RecordStore copy = new RecordStore();
+        for (int id = 0; id < dictionary.size(); id++)
+        {
+            copy.dictionary.idOf(dictionary.nameOf(id));
+        }
+        copy.reserve(size());
+        for (int slot = 0; slot < slotCount; slot++)
+        {
+            if (!isDeleted(slot))
+            {
+                copy.add(ids[slot], TYPES[types[slot]], categories[slot], amounts[slot], dates[slot]);
+            }
+        }
+        return copy;
+    }
+    // Builds an object view of the slot
+    public FinancialRecord getRecord(int slot)
+    {
+        return FinancialRecord.ofCents(ids[slot], TYPES[types[slot]], dictionary.nameOf(categories[slot]),
+                amounts[slot], LocalDate.ofEpochDay(dates[slot]));
+    }
+
+    // Number of live records
+    public int size()
+    {
+        return slotCount - tombstones;
+    }
+    // Number of used slots, deleted ones included
+    public int slotCount()
+    {
+        return slotCount;
+    }
+    public int getId(int slot)
+    {
+        return ids[slot];
+    }
+    public int getEpochDay(int slot)
+    {
+        return dates[slot];
+    }
+    public OperationType getType(int slot)
+    {
+        return TYPES[types[slot]];
+    }
+    public int getTypeOrdinal(int slot)
+    {
+        return types[slot];
+    }
+    public long getCents(int slot)
+    {
+        return amounts[slot];
+    }
+    public int getCategoryId(int slot)
+    {
+        return categories[slot];
+    }
+    public CategoryDictionary getDictionary()
+    {
+        return dictionary;
+    }
+
+    private void unlinkId(int slot)
+    {
+        int id = ids[slot];
+        int newest = idIndex.get(id, -1);
+        if (newest == slot)
+        {
+            if (sameIdPrevious[slot] >= 0)
+            {
+                idIndex.put(id, sameIdPrevious[slot]);
+            }
+            else
+            {
+                idIndex.remove(id);
+            }
+            return;
+        }
+        for (int next = newest; next >= 0; next = sameIdPrevious[next])
+        {
+            if (sameIdPrevious[next] == slot)
+            {
+                sameIdPrevious[next] = sameIdPrevious[slot];
+                return;
+            }
+        }
+    }
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity <= ids.length)
+        {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, newCapacity);
+        dates = Arrays.copyOf(dates, newCapacity);
+        types = Arrays.copyOf(types, newCapacity);
+        amounts = Arrays.copyOf(amounts, newCapacity);
+        categories = Arrays.copyOf(categories, newCapacity);
+        sameIdPrevious = Arrays.copyOf(sameIdPrevious, newCapacity);
+    }
+}
@@ -0,0 +1,56 @@
+import java.util.Arrays;
+
+// Sums in cents and record counts per operation type and per category id over all records,
+// adjusted on every add and remove so that the ledger totals are read in constant time
+public class RunningTotals
+{
+    private final long[] typeSums = new long[OperationType.values().length];
+    private final long[] typeCounts = new long[typeSums.length];
+    private long[] categorySums = new long[16];
+    private long[] categoryCounts = new long[16];
+
+    public void add(int categoryId, int typeOrdinal, long cents)
+    {
+        if (categoryId >= categorySums.length)
+        {
+            int newLength = Math.max(categoryId + 1, categorySums.length * 2);
+            categorySums = Arrays.copyOf(categorySums, newLength);
+            categoryCounts = Arrays.copyOf(categoryCounts, newLength);
+        }
+        typeSums[typeOrdinal] += cents;
+        typeCounts[typeOrdinal]++;
+        categorySums[categoryId] += cents;
+        categoryCounts[categoryId]++;
+    }
+    public void remove(int categoryId, int typeOrdinal, long cents)
+    {
+        typeSums[typeOrdinal] -= cents;
+        typeCounts[typeOrdinal]--;
+        categorySums[categoryId] -= cents;
+        categoryCounts[categoryId]--;
+    }
+    public void clear()
+    {
+        Arrays.fill(typeSums, 0);
+        Arrays.fill(typeCounts, 0);
+        Arrays.fill(categorySums, 0);
+        Arrays.fill(categoryCounts, 0);
+    }
+
+    public long sumByType(int typeOrdinal)
+    {
+        return typeSums[typeOrdinal];
+    }
+    public long countByType(int typeOrdinal)
+    {
+        return typeCounts[typeOrdinal];
+    }
+    public long sumByCategory(int categoryId)
+    {
+        return categoryId < categorySums.length ? categorySums[categoryId] : 0;
+    }
+    public long countByCategory(int categoryId)
+    {
+        return categoryId < categoryCounts.length ? categoryCounts[categoryId] : 0;
+    }
+}
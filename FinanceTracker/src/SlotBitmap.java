@@ -0,0 +1,328 @@
+import java.util.Arrays;
+
+// Compressed sorted set of record slots in the style of a roaring bitmap. The slot space is cut into
+// chunks of 65536; a chunk is kept as a sorted char array while it holds few slots and as a
+// 1024-word bitmap once it is dense, so both sparse and dense sets stay small and fast to intersect.
+public class SlotBitmap
+{
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    // Sorted high 16 bits of the chunks; each chunk has either an array or a bitmap
+    private int[] keys = new int[4];
+    private char[][] arrays = new char[4][];
+    private long[][] bitmaps = new long[4][];
+    private int[] cardinalities = new int[4];
+    private int chunkCount;
+    private int cardinality;
+
+    public void add(int slot)
+    {
+        int chunk = chunkOf(slot >>> 16, true);
+        char low = (char) slot;
+        if (bitmaps[chunk] != null)
+        {
+            long[] words = bitmaps[chunk];
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0)
+            {
+                words[low >>> 6] |= bit;
+                cardinalities[chunk]++;
+                cardinality++;
+            }
+            return;
+        }
+        char[] array = arrays[chunk];
+        int count = cardinalities[chunk];
+        // Slots mostly arrive in ascending order, so try the end first
+        int position = count > 0 && array[count - 1] < low ? count : Arrays.binarySearch(array, 0, count, low);
+        if (position >= 0 && position < count)
+        {
+            return;
+        }
+        position = position < 0 ? -position - 1 : position;
+        if (count == ARRAY_LIMIT)
+        {
+            toBitmap(chunk);
+            add(slot);
+            return;
+        }
+        if (count == array.length)
+        {
+            array = Arrays.copyOf(array, Math.min(ARRAY_LIMIT, count * 2));
+            arrays[chunk] = array;
+        }
+        System.arraycopy(array, position, array, position + 1, count - position);
+        array[position] = low;
+        cardinalities[chunk]++;
+        cardinality++;
+    }
+    public void remove(int slot)
+    {
+        int chunk = chunkOf(slot >>> 16, false);
+        if (chunk < 0)
+        {
+            return;
+        }
+        char low = (char) slot;
+        if (bitmaps[chunk] != null)
+        {
+            long[] words = bitmaps[chunk];
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) != 0)
+            {
+                words[low >>> 6] &= ~bit;
+                cardinalities[chunk]--;
+                cardinality--;
+                if (cardinalities[chunk] <= ARRAY_LIMIT / 2)
+                {
+                    toArray(chunk);
+                }
+            }
+            return;
+        }
+        char[] array = arrays[chunk];
+        int count = cardinalities[chunk];
+        int position = Arrays.binarySearch(array, 0, count, low);
+        if (position >= 0)
+        {
+            System.arraycopy(array, position + 1, array, position, count - position - 1);
+            cardinalities[chunk]--;
+            cardinality--;
+        }
+    }
+    public boolean contains(int slot)
+    {
+        int chunk = chunkOf(slot >>> 16, false);
+        if (chunk < 0)
+        {
+            return false;
+        }
+        char low = (char) slot;
+        if (bitmaps[chunk] != null)
+        {
+            return (bitmaps[chunk][low >>> 6] & 1L << low) != 0;
+        }
+        return Arrays.binarySearch(arrays[chunk], 0, cardinalities[chunk], low) >= 0;
+    }
+    public int cardinality()
+    {
+        return cardinality;
+    }
+    public void clear()
+    {
+        chunkCount = 0;
+        cardinality = 0;
+    }
+    // The slots in ascending order
+    public int[] toArray()
+    {
+        int[] result = new int[cardinality];
+        int count = 0;
+        for (int chunk = 0; chunk < chunkCount; chunk++)
+        {
+            int high = keys[chunk] << 16;
+            if (bitmaps[chunk] != null)
+            {
+                long[] words = bitmaps[chunk];
+                for (int word = 0; word < BITMAP_WORDS; word++)
+                {
+                    for (long bits = words[word]; bits != 0; bits &= bits - 1)
+                    {
+                        result[count++] = high | word << 6 | Long.numberOfTrailingZeros(bits);
+                    }
+                }
+            }
+            else
+            {
+                char[] array = arrays[chunk];
+                for (int i = 0; i < cardinalities[chunk]; i++)
+                {
+                    result[count++] = high | array[i];
+                }
+            }
+        }
+        return result;
+    }
+
+    // Slots present in both sets
+    public static SlotBitmap and(SlotBitmap a, SlotBitmap b)
+    {
+        SlotBitmap result = new SlotBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.chunkCount && j < b.chunkCount)
+        {
+            if (a.keys[i] < b.keys[j])
+            {
+                i++;
+            }
+            else if (a.keys[i] > b.keys[j])
+            {
+                j++;
+            }
+            else
+            {
+                if (a.bitmaps[i] != null && b.bitmaps[j] != null)
+                {
+                    long[] x = a.bitmaps[i];
+                    long[] y = b.bitmaps[j];
+                    long[] words = new long[BITMAP_WORDS];
+                    int count = 0;
+                    for (int word = 0; word < BITMAP_WORDS; word++)
+                    {
+                        words[word] = x[word] & y[word];
+                        count += Long.bitCount(words[word]);
+                    }
+                    result.appendBitmap(a.keys[i], words, count);
+                }
+                else
+                {
+                    // Probe the other chunk with the members of the array chunk, the smaller one if both are
+                    boolean aSmall = b.bitmaps[j] != null
+                            || a.bitmaps[i] == null && a.cardinalities[i] <= b.cardinalities[j];
+                    SlotBitmap small = aSmall ? a : b;
+                    SlotBitmap large = aSmall ? b : a;
+                    int smallChunk = aSmall ? i : j;
+                    int largeChunk = aSmall ? j : i;
+                    char[] array = small.arrays[smallChunk];
+                    char[] matches = new char[small.cardinalities[smallChunk]];
+                    int count = 0;
+                    for (int k = 0; k < matches.length; k++)
+                    {
+                        if (large.containsLow(largeChunk, array[k]))
+                        {
+                            matches[count++] = array[k];
+                        }
+                    }
+                    result.appendArray(a.keys[i], matches, count);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+    // Slots present in either set
+    public static SlotBitmap or(SlotBitmap a, SlotBitmap b)
+    {
+        // Copy the larger set and add the members of the smaller one
+        SlotBitmap large = a.cardinality >= b.cardinality ? a : b;
+        SlotBitmap result = large.copy();
+        for (int slot : (large == a ? b : a).toArray())
+        {
+            result.add(slot);
+        }
+        return result;
+    }
+
+    // Appends a chunk with a key above all present ones; empty chunks are skipped
+    private void appendArray(int key, char[] array, int count)
+    {
+        if (count > 0)
+        {
+            int chunk = chunkOf(key, true);
+            arrays[chunk] = array;
+            cardinalities[chunk] = count;
+            cardinality += count;
+        }
+    }
+    private void appendBitmap(int key, long[] words, int count)
+    {
+        if (count > 0)
+        {
+            int chunk = chunkOf(key, true);
+            bitmaps[chunk] = words;
+            cardinalities[chunk] = count;
+            cardinality += count;
+            if (count <= ARRAY_LIMIT)
+            {
+                toArray(chunk);
+            }
+        }
+    }
+    private SlotBitmap copy()
+    {
+        SlotBitmap copy = new SlotBitmap();
+        int length = Math.max(4, chunkCount);
+        copy.keys = Arrays.copyOf(keys, length);
+        copy.arrays = new char[length][];
+        copy.bitmaps = new long[length][];
+        copy.cardinalities = Arrays.copyOf(cardinalities, length);
+        for (int chunk = 0; chunk < chunkCount; chunk++)
+        {
+            copy.arrays[chunk] = arrays[chunk] == null ? null : arrays[chunk].clone();
+            copy.bitmaps[chunk] = bitmaps[chunk] == null ? null : bitmaps[chunk].clone();
+        }
+        copy.chunkCount = chunkCount;
+        copy.cardinality = cardinality;
+        return copy;
+    }
+
+    private boolean containsLow(int chunk, char low)
+    {
+        if (bitmaps[chunk] != null)
+        {
+            return (bitmaps[chunk][low >>> 6] & 1L << low) != 0;
+        }
+        return Arrays.binarySearch(arrays[chunk], 0, cardinalities[chunk], low) >= 0;
+    }
+    // Index of the chunk with the key; a missing chunk is created if asked to, otherwise -1 is returned
+    private int chunkOf(int key, boolean create)
+    {
+        if (chunkCount > 0 && keys[chunkCount - 1] == key)
+        {
+            return chunkCount - 1;
+        }
+        int position = Arrays.binarySearch(keys, 0, chunkCount, key);
+        if (position >= 0 || !create)
+        {
+            return position >= 0 ? position : -1;
+        }
+        position = -position - 1;
+        if (chunkCount == keys.length)
+        {
+            int newLength = chunkCount * 2;
+            keys = Arrays.copyOf(keys, newLength);
+            arrays = Arrays.copyOf(arrays, newLength);
+            bitmaps = Arrays.copyOf(bitmaps, newLength);
+            cardinalities = Arrays.copyOf(cardinalities, newLength);
+        }
+        System.arraycopy(keys, position, keys, position + 1, chunkCount - position);
+        System.arraycopy(arrays, position, arrays, position + 1, chunkCount - position);
+        System.arraycopy(bitmaps, position, bitmaps, position + 1, chunkCount - position);
+        System.arraycopy(cardinalities, position, cardinalities, position + 1, chunkCount - position);
+        keys[position] = key;
+        arrays[position] = new char[4];
+        bitmaps[position] = null;
+        cardinalities[position] = 0;
+        chunkCount++;
+        return position;
+    }
+    private void toBitmap(int chunk)
+    {
+        long[] words = new long[BITMAP_WORDS];
+        char[] array = arrays[chunk];
+        for (int i = 0; i < cardinalities[chunk]; i++)
+        {
+            words[array[i] >>> 6] |= 1L << array[i];
+        }
+        bitmaps[chunk] = words;
+        arrays[chunk] = null;
+    }
+    private void toArray(int chunk)
+    {
+        char[] array = new char[ARRAY_LIMIT];
+        int count = 0;
+        long[] words = bitmaps[chunk];
+        for (int word = 0; word < BITMAP_WORDS; word++)
+        {
+            for (long bits = words[word]; bits != 0; bits &= bits - 1)
+            {
+                array[count++] = (char) (word << 6 | Long.numberOfTrailingZeros(bits));
+            }
+        }
+        arrays[chunk] = array;
+        bitmaps[chunk] = null;
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Least recently used cache of period statistics, keyed by the kind of statistics and the period in epoch days.
+// A change on some day evicts only the cached periods containing that day; the others stay valid.
+// Methods are synchronized because queries run concurrently under ConcurrentFinanceTracker's read lock.
+public class StatisticsCache
+{
+    public static final int DEFAULT_CAPACITY = 64;
+
+    public enum Kind
+    {
+        CATEGORY, TYPE, BALANCE
+    }
+
+    private static class Key
+    {
+        final Kind kind;
+        final int startDay;
+        final int endDay;
+
+        Key(Kind kind, int startDay, int endDay)
+        {
+            this.kind = kind;
+            this.startDay = startDay;
+            this.endDay = endDay;
+        }
+        @Override
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof Key))
+            {
+                return false;
+            }
+            Key key = (Key) other;
+            return kind == key.kind && startDay == key.startDay && endDay == key.endDay;
+        }
+        @Override
+        public int hashCode()
+        {
+            return (kind.ordinal() * 31 + startDay) * 31 + endDay;
+        }
+    }
+
+    private final LinkedHashMap<Key, Object> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int capacity;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public StatisticsCache(int capacity)
+    {
+        setCapacity(capacity);
+    }
+
+    // Cached value of the period, or null on a miss
+    public synchronized Object get(Kind kind, int startDay, int endDay)
+    {
+        Object value = entries.get(new Key(kind, startDay, endDay));
+        if (value != null)
+        {
+            hits++;
+        }
+        else
+        {
+            misses++;
+        }
+        return value;
+    }
+    public synchronized void put(Kind kind, int startDay, int endDay, Object value)
+    {
+        if (capacity == 0)
+        {
+            return;
+        }
+        entries.put(new Key(kind, startDay, endDay), value);
+        evictOverCapacity();
+    }
+    // Evicts the periods that contain the day
+    public void invalidate(int epochDay)
+    {
+        invalidate(epochDay, epochDay);
+    }
+    // Evicts the periods that overlap [startDay, endDay]; a batch of changes costs one call for its date range
+    public synchronized void invalidate(int startDay, int endDay)
+    {
+        if (entries.isEmpty())
+        {
+            return;
+        }
+        for (Iterator<Key> keys = entries.keySet().iterator(); keys.hasNext(); )
+        {
+            Key key = keys.next();
+            if (key.startDay <= endDay && startDay <= key.endDay)
+            {
+                keys.remove();
+                invalidations++;
+            }
+        }
+    }
+    public synchronized void clear()
+    {
+        invalidations += entries.size();
+        entries.clear();
+    }
+    // 0 disables caching
+    public synchronized void setCapacity(int capacity)
+    {
+        if (capacity < 0)
+        {
+            throw new IllegalArgumentException("The cache capacity cannot be negative");
+        }
+        this.capacity = capacity;
+        evictOverCapacity();
+    }
+
+    public synchronized int getCapacity()
+    {
+        return capacity;
+    }
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+    // Periods dropped because the cache was full
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+    // Periods dropped because a record inside them changed
+    public synchronized long getInvalidations()
+    {
+        return invalidations;
+    }
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("size=%d/%d, hits=%d, misses=%d, evictions=%d, invalidations=%d",
+                entries.size(), capacity, hits, misses, evictions, invalidations);
+    }
+
+    private void evictOverCapacity()
+    {
+        Iterator<Key> eldest = entries.keySet().iterator();
+        while (entries.size() > capacity)
+        {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.ToDoubleFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Latency histograms of the tracker's public queries and mutations, failures per operation, load and save
+// throughput and parse errors per file. Off by default; while off, start() is one volatile read and record() returns
+// at once, so the calls can stay in the hot paths. Readable as text through dump() and over JMX.
+public class TrackerMetrics implements TrackerMetricsMXBean
+{
+    public enum Operation
+    {
+        ADD_RECORD, ADD_RECORDS, UPDATE_RECORD, REMOVE_RECORD,
+        GET_ALL_RECORDS, GET_ALL_RECORDS_SORTED_BY_DATE, GET_RECORDS_BY_DATE_RANGE, GET_RECORDS_BY_CATEGORY,
+        GET_RECORDS_BY_TYPE, GET_RECORDS, QUERY, GET_STATISTICS_BY_CATEGORY, GET_STATISTICS_BY_TYPE,
+        GET_BALANCE, GET_TRENDS, GET_TOTALS_BY_CATEGORY, SAVE_TO_FILE, LOAD_FROM_FILE, IMPORT_FROM_FILE, EXPORT
+    }
+    public enum Transfer
+    {
+        LOAD, SAVE
+    }
+    // Body of an operation timed by time()
+    public interface Action<T, E extends Exception>
+    {
+        T run() throws E;
+    }
+    public interface VoidAction<E extends Exception>
+    {
+        void run() throws E;
+    }
+
+    private volatile boolean enabled;
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    // Failed calls are counted here and kept out of the latencies
+    private final LongAdder[] errors = new LongAdder[latencies.length];
+    private final LongAdder[] rows = new LongAdder[Transfer.values().length];
+    private final LongAdder[] bytes = new LongAdder[rows.length];
+    private final LongAdder[] nanos = new LongAdder[rows.length];
+    private final Map<String, LongAdder> parseErrors = new ConcurrentHashMap<>();
+    private final LongAdder rollupFallbacks = new LongAdder();
+    private final LongSupplier recordCount;
+    private ObjectName registeredName;
+
+    public TrackerMetrics(LongSupplier recordCount)
+    {
+        this.recordCount = recordCount;
+        for (int i = 0; i < latencies.length; i++)
+        {
+            latencies[i] = new LatencyHistogram();
+            errors[i] = new LongAdder();
+        }
+        for (int i = 0; i < rows.length; i++)
+        {
+            rows[i] = new LongAdder();
+            bytes[i] = new LongAdder();
+            nanos[i] = new LongAdder();
+        }
+    }
+
+    // Start time of an operation, or 0 while the metrics are off
+    public long start()
+    {
+        return enabled ? System.nanoTime() : 0;
+    }
+    // Records the time since start(); does nothing for an operation started while the metrics were off
+    public void record(Operation operation, long started)
+    {
+        if (started != 0)
+        {
+            latencies[operation.ordinal()].record(System.nanoTime() - started);
+        }
+    }
+    // Records a call started at start() that failed
+    public void recordError(Operation operation, long started)
+    {
+        if (started != 0)
+        {
+            errors[operation.ordinal()].increment();
+        }
+    }
+    // Runs the action and records its time, or an error if it throws
+    public <T, E extends Exception> T time(Operation operation, Action<T, E> action) throws E
+    {
+        long started = start();
+        T result;
+        try
+        {
+            result = action.run();
+        }
+        catch (Throwable e)
+        {
+            recordError(operation, started);
+            throw e;
+        }
+        record(operation, started);
+        return result;
+    }
+    public <E extends Exception> void time(Operation operation, VoidAction<E> action) throws E
+    {
+        long started = start();
+        try
+        {
+            action.run();
+        }
+        catch (Throwable e)
+        {
+            recordError(operation, started);
+            throw e;
+        }
+        record(operation, started);
+    }
+    // Records a load or save that moved that many rows and bytes since start()
+    public void recordTransfer(Transfer transfer, long started, long rowCount, long byteCount)
+    {
+        if (started != 0)
+        {
+            nanos[transfer.ordinal()].add(System.nanoTime() - started);
+            rows[transfer.ordinal()].add(rowCount);
+            bytes[transfer.ordinal()].add(byteCount);
+        }
+    }
+    public void recordParseErrors(String fileName, int count)
+    {
+        if (enabled && count > 0)
+        {
+            parseErrors.computeIfAbsent(fileName, name -> new LongAdder()).add(count);
+        }
+    }
+    // A period statistic scanned the records because the daily rollup stopped tracking
+    public void recordRollupFallback()
+    {
+        if (enabled)
+        {
+            rollupFallbacks.increment();
+        }
+    }
+    public LatencyHistogram getLatency(Operation operation)
+    {
+        return latencies[operation.ordinal()];
+    }
+
+    // Makes the metrics readable over JMX under FinanceTracker:type=TrackerMetrics,name=<name>
+    public synchronized void register(String name) throws JMException
+    {
+        unregister();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("FinanceTracker:type=TrackerMetrics,name=" + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+        registeredName = objectName;
+    }
+    public synchronized void unregister() throws JMException
+    {
+        if (registeredName != null)
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            registeredName = null;
+        }
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+    @Override
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+    @Override
+    public void reset()
+    {
+        for (LatencyHistogram latency : latencies)
+        {
+            latency.reset();
+        }
+        for (LongAdder count : errors)
+        {
+            count.reset();
+        }
+        for (int i = 0; i < rows.length; i++)
+        {
+            rows[i].reset();
+            bytes[i].reset();
+            nanos[i].reset();
+        }
+        parseErrors.clear();
+        rollupFallbacks.reset();
+    }
+    @Override
+    public long getRecordCount()
+    {
+        return recordCount.getAsLong();
+    }
+    // Used heap divided by the record count; garbage not yet collected is counted too, so it is an upper estimate
+    @Override
+    public long getHeapBytesPerRecord()
+    {
+        long records = recordCount.getAsLong();
+        Runtime runtime = Runtime.getRuntime();
+        return records == 0 ? 0 : (runtime.totalMemory() - runtime.freeMemory()) / records;
+    }
+    @Override
+    public Map<String, Long> getOperationCounts()
+    {
+        Map<String, Long> result = new TreeMap<>();
+        for (Operation operation : Operation.values())
+        {
+            result.put(operation.name(), latencies[operation.ordinal()].getCount());
+        }
+        return result;
+    }
+    @Override
+    public Map<String, Long> getErrorCounts()
+    {
+        Map<String, Long> result = new TreeMap<>();
+        for (Operation operation : Operation.values())
+        {
+            result.put(operation.name(), errors[operation.ordinal()].sum());
+        }
+        return result;
+    }
+    @Override
+    public Map<String, Double> getLatencyMeanMicros()
+    {
+        return latencyMicros(LatencyHistogram::getMean);
+    }
+    @Override
+    public Map<String, Double> getLatencyP50Micros()
+    {
+        return latencyMicros(latency -> latency.getPercentile(0.5));
+    }
+    @Override
+    public Map<String, Double> getLatencyP99Micros()
+    {
+        return latencyMicros(latency -> latency.getPercentile(0.99));
+    }
+    @Override
+    public Map<String, Double> getLatencyMaxMicros()
+    {
+        return latencyMicros(LatencyHistogram::getMax);
+    }
+    @Override
+    public long getLoadedRows()
+    {
+        return rows[Transfer.LOAD.ordinal()].sum();
+    }
+    @Override
+    public long getLoadedBytes()
+    {
+        return bytes[Transfer.LOAD.ordinal()].sum();
+    }
+    @Override
+    public double getLoadRowsPerSecond()
+    {
+        return perSecond(rows, Transfer.LOAD);
+    }
+    @Override
+    public double getLoadBytesPerSecond()
+    {
+        return perSecond(bytes, Transfer.LOAD);
+    }
+    @Override
+    public long getSavedRows()
+    {
+        return rows[Transfer.SAVE.ordinal()].sum();
+    }
+    @Override
+    public long getSavedBytes()
+    {
+        return bytes[Transfer.SAVE.ordinal()].sum();
+    }
+    @Override
+    public double getSaveRowsPerSecond()
+    {
+        return perSecond(rows, Transfer.SAVE);
+    }
+    @Override
+    public double getSaveBytesPerSecond()
+    {
+        return perSecond(bytes, Transfer.SAVE);
+    }
+    @Override
+    public Map<String, Long> getParseErrors()
+    {
+        Map<String, Long> result = new TreeMap<>();
+        parseErrors.forEach((fileName, count) -> result.put(fileName, count.sum()));
+        return result;
+    }
+    @Override
+    public long getRollupFallbacks()
+    {
+        return rollupFallbacks.sum();
+    }
+    // Text report of everything recorded so far; operations that were never called are left out
+    @Override
+    public String dump()
+    {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Metrics %s, records: %,d, heap per record: ~%,d bytes%n",
+                enabled ? "on" : "off", getRecordCount(), getHeapBytesPerRecord()));
+        text.append(String.format("%-32s %10s %8s %12s %12s %12s %12s%n",
+                "operation", "count", "errors", "mean, us", "p50, us", "p99, us", "max, us"));
+        for (Operation operation : Operation.values())
+        {
+            LatencyHistogram latency = latencies[operation.ordinal()];
+            long errorCount = errors[operation.ordinal()].sum();
+            if (latency.getCount() > 0 || errorCount > 0)
+            {
+                text.append(String.format("%-32s %,10d %,8d %,12.1f %,12.1f %,12.1f %,12.1f%n",
+                        operation.name().toLowerCase(), latency.getCount(), errorCount, latency.getMean() / 1000,
+                        latency.getPercentile(0.5) / 1000.0, latency.getPercentile(0.99) / 1000.0,
+                        latency.getMax() / 1000.0));
+            }
+        }
+        for (Transfer transfer : Transfer.values())
+        {
+            text.append(String.format("%s: %,d rows, %,d bytes, %,.0f rows/s, %,.1f MB/s%n",
+                    transfer.name().toLowerCase(), rows[transfer.ordinal()].sum(), bytes[transfer.ordinal()].sum(),
+                    perSecond(rows, transfer), perSecond(bytes, transfer) / (1 << 20)));
+        }
+        getParseErrors().forEach((fileName, count) ->
+                text.append(String.format("parse errors in %s: %,d%n", fileName, count)));
+        if (rollupFallbacks.sum() > 0)
+        {
+            text.append(String.format("statistics scanned without the daily rollup: %,d%n", rollupFallbacks.sum()));
+        }
+        return text.toString();
+    }
+
+    private Map<String, Double> latencyMicros(ToDoubleFunction<LatencyHistogram> statistic)
+    {
+        Map<String, Double> result = new TreeMap<>();
+        for (Operation operation : Operation.values())
+        {
+            result.put(operation.name(), statistic.applyAsDouble(latencies[operation.ordinal()]) / 1000);
+        }
+        return result;
+    }
+    private double perSecond(LongAdder[] amounts, Transfer transfer)
+    {
+        long elapsed = nanos[transfer.ordinal()].sum();
+        return elapsed == 0 ? 0 : amounts[transfer.ordinal()].sum() * 1e9 / elapsed;
+    }
+}
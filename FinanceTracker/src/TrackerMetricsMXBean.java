@@ -0,0 +1,32 @@
+import java.util.Map;
+
+// JMX view of TrackerMetrics; latencies are in microseconds and keyed by operation name
+public interface TrackerMetricsMXBean
+{
+    boolean isEnabled();
+    void setEnabled(boolean enabled);
+    void reset();
+
+    long getRecordCount();
+    long getHeapBytesPerRecord();
+
+    Map<String, Long> getOperationCounts();
+    Map<String, Long> getErrorCounts();
+    Map<String, Double> getLatencyMeanMicros();
+    Map<String, Double> getLatencyP50Micros();
+    Map<String, Double> getLatencyP99Micros();
+    Map<String, Double> getLatencyMaxMicros();
+
+    long getLoadedRows();
+    long getLoadedBytes();
+    double getLoadRowsPerSecond();
+    double getLoadBytesPerSecond();
+    long getSavedRows();
+    long getSavedBytes();
+    double getSaveRowsPerSecond();
+    double getSaveBytesPerSecond();
+    Map<String, Long> getParseErrors();
+    long getRollupFallbacks();
+
+    String dump();
+}
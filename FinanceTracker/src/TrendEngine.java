@@ -0,0 +1,102 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// Builds TrendSeries in one pass over the date index: the slots of the period come in day order, so the
+// current bucket only ever moves forward and every record costs a comparison and three array additions.
+public class TrendEngine
+{
+    // About 2,800 years of days; the income and expense sums then take 8 MB each
+    public static final int MAX_BUCKETS = 1 << 20;
+    // Sums per category and bucket, 128 MB at most; only the categories that occur in the period get a row
+    public static final int MAX_CATEGORY_CELLS = 1 << 24;
+
+    private final RecordStore records;
+    private final DateIndex dateIndex;
+
+    public TrendEngine(RecordStore records, DateIndex dateIndex)
+    {
+        this.records = records;
+        this.dateIndex = dateIndex;
+    }
+
+    public TrendSeries run(LocalDate start, LocalDate end, TrendSeries.Bucket bucket, long openingBalanceCents)
+    {
+        long bucketCount = bucket.count(start, end);
+        if (bucketCount > MAX_BUCKETS)
+        {
+            throw new IllegalArgumentException("The period spans more than " + MAX_BUCKETS + " buckets");
+        }
+        int size = (int) bucketCount;
+        int[] bounds = new int[size + 1];
+        LocalDate bucketStart = bucket.startOf(start);
+        for (int i = 0; i <= size; i++)
+        {
+            bounds[i] = (int) bucketStart.toEpochDay();
+            bucketStart = bucket.next(bucketStart);
+        }
+
+        int income = OperationType.INCOME.ordinal();
+        int categoryCount = records.getDictionary().size();
+        long[] incomeCents = new long[size];
+        long[] expenseCents = new long[size];
+        // Row of every category id in categoryCents, -1 until the category occurs
+        int[] categoryRows = new int[categoryCount];
+        Arrays.fill(categoryRows, -1);
+        int rowCount = 0;
+        long[] categoryCents = new long[0];
+        int current = 0;
+        for (int slot : dateIndex.slotsInRange((int) start.toEpochDay(), (int) end.toEpochDay()))
+        {
+            int day = records.getEpochDay(slot);
+            while (day >= bounds[current + 1])
+            {
+                current++;
+            }
+            long cents = records.getCents(slot);
+            if (records.getTypeOrdinal(slot) == income)
+            {
+                incomeCents[current] += cents;
+            }
+            else
+            {
+                expenseCents[current] += cents;
+            }
+            int category = records.getCategoryId(slot);
+            int row = categoryRows[category];
+            if (row < 0)
+            {
+                row = rowCount++;
+                categoryRows[category] = row;
+                if ((long) rowCount * size > categoryCents.length)
+                {
+                    categoryCents = grow(categoryCents, rowCount, size);
+                }
+            }
+            categoryCents[row * size + current] += cents;
+        }
+        // Names are resolved now, while the caller still guards the dictionary against concurrent additions
+        String[] categoryNames = new String[rowCount];
+        for (int id = 0; id < categoryRows.length; id++)
+        {
+            if (categoryRows[id] >= 0)
+            {
+                categoryNames[categoryRows[id]] = records.getDictionary().nameOf(id);
+            }
+        }
+        return new TrendSeries(bucket, bounds, openingBalanceCents, incomeCents, expenseCents,
+                categoryNames, categoryCents);
+    }
+
+    // Room for at least rows rows of size cells, doubling the rows up to the cell limit
+    private static long[] grow(long[] categoryCents, int rows, int size)
+    {
+        long maxRows = MAX_CATEGORY_CELLS / size;
+        if (rows > maxRows)
+        {
+            throw new IllegalArgumentException("The categories of the period need more than " + MAX_CATEGORY_CELLS
+                    + " sums; choose a longer bucket or a shorter period");
+        }
+        long capacity = Math.min(Math.max(rows, 2L * categoryCents.length / size), maxRows);
+        return Arrays.copyOf(categoryCents, (int) (capacity * size));
+    }
+}
@@ -0,0 +1,166 @@
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Income, expenses and sums per category of consecutive days, weeks (Monday to Sunday) or calendar months,
+// as produced by TrendEngine. Bucket i covers the days from getStart(i) to getEnd(i); the first and the last
+// bucket may reach beyond the requested period, but only records inside the period are counted.
+public class TrendSeries
+{
+    public enum Bucket
+    {
+        DAY, WEEK, MONTH;
+
+        // First day of the bucket containing the day
+        public LocalDate startOf(LocalDate date)
+        {
+            switch (this)
+            {
+                case WEEK:
+                    return date.minusDays(date.getDayOfWeek().getValue() - 1);
+                case MONTH:
+                    return date.withDayOfMonth(1);
+                default:
+                    return date;
+            }
+        }
+        public LocalDate next(LocalDate start)
+        {
+            switch (this)
+            {
+                case WEEK:
+                    return start.plusWeeks(1);
+                case MONTH:
+                    return start.plusMonths(1);
+                default:
+                    return start.plusDays(1);
+            }
+        }
+        // Number of buckets touching the period
+        public long count(LocalDate start, LocalDate end)
+        {
+            ChronoUnit unit = this == DAY ? ChronoUnit.DAYS : this == WEEK ? ChronoUnit.WEEKS : ChronoUnit.MONTHS;
+            return unit.between(startOf(start), startOf(end)) + 1;
+        }
+    }
+
+    private final Bucket bucket;
+    // Epoch day of the first day of every bucket, plus the day after the last one
+    private final int[] bounds;
+    private final long openingBalanceCents;
+    private final long[] incomeCents;
+    private final long[] expenseCents;
+    // Every category with records in the period has a row: its sum in bucket i is at row * size() + i.
+    // The names are copied out of the tracker's dictionary, which may change after the series is built.
+    private final String[] categoryNames;
+    private final Map<String, Integer> categoryRows = new HashMap<>();
+    private final long[] categoryCents;
+
+    public TrendSeries(Bucket bucket, int[] bounds, long openingBalanceCents, long[] incomeCents,
+                       long[] expenseCents, String[] categoryNames, long[] categoryCents)
+    {
+        this.bucket = bucket;
+        this.bounds = bounds;
+        this.openingBalanceCents = openingBalanceCents;
+        this.incomeCents = incomeCents;
+        this.expenseCents = expenseCents;
+        this.categoryNames = categoryNames;
+        this.categoryCents = categoryCents;
+        for (int row = 0; row < categoryNames.length; row++)
+        {
+            categoryRows.put(categoryNames[row], row);
+        }
+    }
+
+    public Bucket getBucket()
+    {
+        return bucket;
+    }
+    // Number of buckets
+    public int size()
+    {
+        return incomeCents.length;
+    }
+    public LocalDate getStart(int index)
+    {
+        return LocalDate.ofEpochDay(bounds[index]);
+    }
+    public LocalDate getEnd(int index)
+    {
+        return LocalDate.ofEpochDay(bounds[index + 1] - 1L);
+    }
+    public long getIncomeCents(int index)
+    {
+        return incomeCents[index];
+    }
+    public long getExpensesCents(int index)
+    {
+        return expenseCents[index];
+    }
+    public long getBalanceCents(int index)
+    {
+        return incomeCents[index] - expenseCents[index];
+    }
+    // Balance of all records before the period
+    public long getOpeningBalanceCents()
+    {
+        return openingBalanceCents;
+    }
+    // Balance of all records up to the end of the bucket
+    public long[] getRunningBalanceCents()
+    {
+        long[] running = new long[size()];
+        long balance = openingBalanceCents;
+        for (int i = 0; i < running.length; i++)
+        {
+            balance += incomeCents[i] - expenseCents[i];
+            running[i] = balance;
+        }
+        return running;
+    }
+    // Categories with at least one record in the period, in alphabetical order
+    public List<String> getCategories()
+    {
+        List<String> categories = new ArrayList<>(Arrays.asList(categoryNames));
+        Collections.sort(categories);
+        return categories;
+    }
+    // Sums of the category per bucket; zeros for a category without records in the period
+    public long[] getCategoryCents(String category)
+    {
+        long[] sums = new long[size()];
+        Integer row = categoryRows.get(category);
+        if (row != null)
+        {
+            System.arraycopy(categoryCents, row * size(), sums, 0, sums.length);
+        }
+        return sums;
+    }
+    // Average of the category's sums over the bucket and the window - 1 buckets before it; the first
+    // buckets average over those available
+    public double[] getMovingAverage(String category, int window)
+    {
+        if (window < 1)
+        {
+            throw new IllegalArgumentException("The window must span at least one bucket");
+        }
+        long[] sums = getCategoryCents(category);
+        double[] averages = new double[sums.length];
+        long windowSum = 0;
+        for (int i = 0; i < sums.length; i++)
+        {
+            windowSum += sums[i];
+            if (i >= window)
+            {
+                windowSum -= sums[i - window];
+            }
+            averages[i] = Money.toAmount(windowSum) / Math.min(i + 1, window);
+        }
+        return averages;
+    }
+}